@@ -0,0 +1,55 @@
+package waldonsm.nimgame.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import waldonsm.nimgame.ai.NimGameAI;
+
+/**
+ * Measures NimGameAI.chooseNumToTake for the AIs shipped with the game.
+ * @author Shawn Waldon
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AIBenchmark {
+
+	@Param({"TakeMaximumPossibleAI", "PerfectPlayAI", "GrundyAI"})
+	private String ai;
+
+	@Param({"45", "1000000"})
+	private int numLeft;
+
+	@Param({"5"})
+	private int maxNumTakable;
+
+	@Param({"true", "false"})
+	private boolean lastTakenLoses;
+
+	private NimGameAI bot;
+
+	@Setup
+	public void setUp() throws Exception {
+		bot = (NimGameAI) Class.forName("waldonsm.nimgame.ai." + ai).newInstance();
+	}
+
+	@Benchmark
+	public int chooseNumToTake() {
+		return bot.chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses);
+	}
+}
@@ -0,0 +1,34 @@
+package waldonsm.nimgame.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the NimGame benchmarks with the usual JMH command line options, always adding the
+ * GC profiler so that the allocation rate of every benchmark is reported alongside its
+ * time.  Use e.g. "-rf json -rff result.json" to keep results to compare across versions.
+ * @author Shawn Waldon
+ *
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.shouldHelp()) {
+			cmd.showHelp();
+			return;
+		}
+		Runner runner = new Runner(new OptionsBuilder()
+				.parent(cmd)
+				.addProfiler(GCProfiler.class)
+				.jvmArgsAppend("-Djava.awt.headless=true")
+				.build());
+		if (cmd.shouldList()) {
+			runner.list();
+			return;
+		}
+		runner.run();
+	}
+}
@@ -0,0 +1,86 @@
+package waldonsm.nimgame.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import waldonsm.nimgame.gui.animation.Explosion;
+
+/**
+ * Measures Explosion.next() and draw(), for a single frame and over a whole explosion.
+ * @author Shawn Waldon
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExplosionBenchmark {
+
+	private static final Runnable NO_OP = new Runnable() {
+		public void run() {
+		}
+	};
+
+	@Param({"2", "4"})
+	private int cellSize;
+
+	@Param({"0", "20", "36"})
+	private int turn;
+
+	private Explosion frame;
+	private BufferedImage image;
+	private Graphics2D g;
+
+	@Setup
+	public void setUp() {
+		image = new BufferedImage(120, 120, BufferedImage.TYPE_INT_ARGB);
+		g = image.createGraphics();
+		frame = new Explosion(0, 0, cellSize, Color.ORANGE, NO_OP);
+		for (int i = 0; i < turn; i++) {
+			frame.next();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		g.dispose();
+	}
+
+	/**
+	 * Draws the explosion as it is on the given turn
+	 */
+	@Benchmark
+	public void draw() {
+		frame.draw(g);
+	}
+
+	/**
+	 * Creates an explosion and runs it to completion, drawing every frame
+	 */
+	@Benchmark
+	public Explosion lifecycle() {
+		Explosion e = new Explosion(0, 0, cellSize, Color.ORANGE, NO_OP);
+		while (!e.isDone()) {
+			e.draw(g);
+			e.next();
+		}
+		return e;
+	}
+}
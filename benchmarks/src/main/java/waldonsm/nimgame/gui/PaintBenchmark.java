@@ -0,0 +1,300 @@
+package waldonsm.nimgame.gui;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+
+import waldonsm.nimgame.ai.PerfectPlayAI;
+import waldonsm.nimgame.gui.animation.AnimationDoneListener;
+
+/**
+ * Measures how NimGamePanel.paintComponent scales with the size of the pile and the number
+ * of explosions running, without a display.  The panel sits in a JScrollPane as in the
+ * demo, scrolled to the bottom of the pile, and each frame paints the visible area into an
+ * offscreen image on the EDT, as a full repaint would.  The explosions are real ones,
+ * animated by the AnimationRunner's own thread; as each one finishes another is started
+ * over a random visible cell, so the number running stays at the level being measured.
+ * <P>
+ * This is a plain program rather than a JMH benchmark because the panel has to be painted
+ * on the EDT while the runner thread animates it.  Each combination is warmed up, then its
+ * frames are timed one by one and written as a CSV row: frames per second of paint time,
+ * the mean and percentile paint times in microseconds and the bytes allocated per frame
+ * (by the EDT, -1 if the JVM cannot tell).
+ * <P>
+ * Usage: java -cp benchmarks.jar waldonsm.nimgame.gui.PaintBenchmark [options]<br>
+ * --things a,b,c pile sizes (default 1000,10000,100000,1000000)<br>
+ * --animatables a,b,c explosions running (default 0,10,100,500)<br>
+ * --zoom a,b,c zoom levels, by name (default SPRITES)<br>
+ * --frames n frames timed per combination (default 500)<br>
+ * --warmup n frames painted first (default 200)<br>
+ * --height n the height of the viewport (default 600)<br>
+ * --out file where to write the CSV (default: standard output)
+ * @author Shawn Waldon
+ *
+ */
+public class PaintBenchmark {
+
+	private static final String HEADER =
+			"zoom,things,animatables,frames,fps,mean_us,p50_us,p90_us,p99_us,max_us,alloc_bytes_per_frame";
+
+	private final NimGamePanel panel;
+	private final JScrollPane scroll;
+	private final BufferedImage image;
+	private final Random random = new Random(1);
+	/**
+	 * The explosions running, and whether finished ones are replaced.  EDT only.
+	 */
+	private int running;
+	private boolean refill;
+	private final AnimationDoneListener refiller = new AnimationDoneListener() {
+		@Override
+		public void animationDone() {
+			running--;
+			if (refill) {
+				startExplosion();
+			}
+		}
+	};
+
+	private PaintBenchmark(int height) {
+		panel = new NimGamePanel(1, 5, true, new PerfectPlayAI(), true);
+		scroll = new JScrollPane(panel, JScrollPane.VERTICAL_SCROLLBAR_NEVER, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+		scroll.setBorder(null);
+		scroll.setSize(BoardLayout.BOARD_WIDTH, height);
+		image = new BufferedImage(BoardLayout.BOARD_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/**
+	 * Sets up a new pile, scrolled to the bottom.  EDT only.
+	 */
+	private void setUp(BoardZoom zoom, int things) {
+		panel.newGame(things, 5, true, true);
+		panel.setZoom(zoom);
+		// validate does nothing without a peer, so the layout is done by hand
+		JViewport viewport = scroll.getViewport();
+		scroll.doLayout();
+		viewport.doLayout();
+		viewport.setViewPosition(new Point(0, Math.max(0, panel.getHeight() - viewport.getHeight())));
+	}
+
+	/**
+	 * Starts an explosion over a random cell in view.  EDT only.
+	 */
+	private void startExplosion() {
+		Rectangle view = scroll.getViewport().getViewRect();
+		BoardLayout layout = panel.getBoardLayout();
+		int cell = layout.cellAt(view.x + random.nextInt(view.width), view.y + random.nextInt(view.height),
+				panel.getHeight());
+		if (cell < 0) {
+			// the board is shorter than the view, use the first cell
+			cell = 0;
+		}
+		running++;
+		panel.explode(Math.min(layout.firstThing(cell), Math.max(0, layout.endThing(cell) - 1)), refiller);
+	}
+
+	/**
+	 * Paints the visible part of the panel, as the viewport would.  EDT only.
+	 */
+	private void paintFrame() {
+		Rectangle view = scroll.getViewport().getViewRect();
+		Graphics2D g = image.createGraphics();
+		g.translate(-view.x, -view.y);
+		g.setClip(view);
+		panel.paint(g);
+		g.dispose();
+	}
+
+	/**
+	 * Runs a task on the EDT and waits for it
+	 */
+	private static void onEDT(Runnable r) throws Exception {
+		SwingUtilities.invokeAndWait(r);
+	}
+
+	/**
+	 * Measures one combination and returns its CSV row
+	 */
+	private String measure(final BoardZoom zoom, final int things, final int animatables,
+			int warmup, final int frames) throws Exception {
+		onEDT(new Runnable() {
+			public void run() {
+				setUp(zoom, things);
+				refill = true;
+				for (int i = 0; i < animatables; i++) {
+					startExplosion();
+				}
+			}
+		});
+		final Runnable paint = new Runnable() {
+			public void run() {
+				paintFrame();
+			}
+		};
+		for (int i = 0; i < warmup; i++) {
+			onEDT(paint);
+		}
+		final long[] nanos = new long[frames];
+		final long[] allocated = new long[1];
+		for (int i = 0; i < frames; i++) {
+			final int frame = i;
+			onEDT(new Runnable() {
+				public void run() {
+					long bytes = allocatedBytes();
+					long start = System.nanoTime();
+					paintFrame();
+					nanos[frame] = System.nanoTime() - start;
+					allocated[0] += allocatedBytes() - bytes;
+				}
+			});
+		}
+		// let the explosions run out before the next combination
+		onEDT(new Runnable() {
+			public void run() {
+				refill = false;
+			}
+		});
+		final int[] left = new int[1];
+		do {
+			Thread.sleep(50);
+			onEDT(new Runnable() {
+				public void run() {
+					left[0] = running;
+				}
+			});
+		} while (left[0] > 0);
+
+		long total = 0;
+		for (long n: nanos) {
+			total += n;
+		}
+		Arrays.sort(nanos);
+		boolean allocKnown = allocatedBytes() >= 0;
+		return String.format(Locale.ROOT, "%s,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%d",
+				zoom.name(), things, animatables, frames, frames * 1e9 / total, total / 1e3 / frames,
+				percentile(nanos, 0.50), percentile(nanos, 0.90), percentile(nanos, 0.99),
+				nanos[frames - 1] / 1e3, allocKnown ? allocated[0] / frames : -1);
+	}
+
+	/**
+	 * Returns the given percentile of sorted times, in microseconds
+	 */
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1e3;
+	}
+
+	/**
+	 * Returns the bytes the current thread has allocated, or -1 if the JVM does not say
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static int[] parseInts(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+
+	private static void usage() {
+		System.err.println("Usage: PaintBenchmark [--things a,b] [--animatables a,b] [--zoom a,b] [--frames n] [--warmup n] [--height n] [--out file]");
+		System.exit(1);
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		int[] things = {1000, 10000, 100000, 1000000};
+		int[] animatables = {0, 10, 100, 500};
+		List<BoardZoom> zooms = new ArrayList<BoardZoom>(Arrays.asList(BoardZoom.SPRITES));
+		int frames = 500, warmup = 200, height = 600;
+		String out = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (!arg.startsWith("--") || i + 1 >= args.length)
+					usage();
+				String value = args[++i];
+				if (arg.equals("--things")) {
+					things = parseInts(value);
+				} else if (arg.equals("--animatables")) {
+					animatables = parseInts(value);
+				} else if (arg.equals("--zoom")) {
+					zooms.clear();
+					for (String z: value.split(",")) {
+						zooms.add(BoardZoom.valueOf(z.trim().toUpperCase(Locale.ROOT)));
+					}
+				} else if (arg.equals("--frames")) {
+					frames = Integer.parseInt(value);
+				} else if (arg.equals("--warmup")) {
+					warmup = Integer.parseInt(value);
+				} else if (arg.equals("--height")) {
+					height = Integer.parseInt(value);
+				} else if (arg.equals("--out")) {
+					out = value;
+				} else {
+					usage();
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+		}
+		if (frames <= 0 || warmup < 0 || height <= 0)
+			usage();
+
+		final PaintBenchmark[] bench = new PaintBenchmark[1];
+		final int h = height;
+		onEDT(new Runnable() {
+			public void run() {
+				bench[0] = new PaintBenchmark(h);
+			}
+		});
+		Writer w = (out == null) ? new PrintWriter(System.out) : new FileWriter(out);
+		PrintWriter csv = new PrintWriter(w);
+		try {
+			csv.println(HEADER);
+			csv.flush();
+			for (BoardZoom zoom: zooms) {
+				for (int n: things) {
+					for (int a: animatables) {
+						String row = bench[0].measure(zoom, n, a, warmup, frames);
+						csv.println(row);
+						csv.flush();
+						if (out != null) {
+							System.out.println(row);
+						}
+					}
+				}
+			}
+		} finally {
+			if (out != null) {
+				csv.close();
+			}
+		}
+		if (csv.checkError())
+			throw new IOException("Could not write " + out);
+		System.exit(0);
+	}
+}
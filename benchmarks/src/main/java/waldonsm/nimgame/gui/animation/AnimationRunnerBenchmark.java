@@ -0,0 +1,121 @@
+package waldonsm.nimgame.gui.animation;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one full AnimationRunner tick over a number of running explosions, spread over
+ * a number of scopes (boards).  The runner thread is not started, the benchmark ticks the
+ * runner itself.
+ * @author Shawn Waldon
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnimationRunnerBenchmark {
+
+	@Param({"1", "16", "256"})
+	private int animatables;
+
+	@Param({"1", "64"})
+	private int scopes;
+
+	private AnimationScope[] boards;
+
+	@Setup
+	public void setUp() {
+		boards = new AnimationScope[scopes];
+		for (int b = 0; b < scopes; b++) {
+			boards[b] = new AnimationScope(null);
+			AnimationRunner.RUNNER.register(boards[b]);
+		}
+		for (int i = 0; i < animatables; i++) {
+			boards[i % scopes].addAnimatable(new CyclingExplosion(i % 10 * 50, i / 10 * 50));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (AnimationScope board: boards) {
+			board.clear();
+			AnimationRunner.RUNNER.unregister(board);
+		}
+	}
+
+	@Benchmark
+	public void tick() {
+		AnimationRunner.RUNNER.tick();
+	}
+
+	/**
+	 * An Animatable that is never done, starting a new Explosion in the same place each
+	 * time the last one finishes, so the runner always has the same number to animate.
+	 */
+	private static class CyclingExplosion implements Animatable {
+		private static final AtomicInteger ids = new AtomicInteger();
+		private static final Runnable NO_OP = new Runnable() {
+			public void run() {
+			}
+		};
+
+		private final int id = ids.getAndIncrement();
+		private final int x, y;
+		private Explosion current;
+
+		CyclingExplosion(int x, int y) {
+			this.x = x;
+			this.y = y;
+			current = new Explosion(x, y, 2, Color.ORANGE, NO_OP);
+		}
+
+		public boolean isDone() {
+			return false;
+		}
+
+		public void next() {
+			current.next();
+			if (current.isDone()) {
+				current = new Explosion(x, y, 2, Color.ORANGE, NO_OP);
+			}
+		}
+
+		public void submitDoneRunnable() {
+		}
+
+		public void draw(Graphics2D g2) {
+			current.draw(g2);
+		}
+
+		public Rectangle getBounds(Rectangle rv) {
+			return current.getBounds(rv);
+		}
+
+		public int compareTo(Animatable other) {
+			if (other instanceof CyclingExplosion) {
+				int o = ((CyclingExplosion) other).id;
+				return (id > o) ? 1 : (id < o) ? -1 : 0;
+			}
+			return getClass().getName().compareTo(other.getClass().getName());
+		}
+	}
+}
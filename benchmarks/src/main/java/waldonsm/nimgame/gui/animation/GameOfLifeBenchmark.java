@@ -0,0 +1,86 @@
+package waldonsm.nimgame.gui.animation;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures GameOfLife.next() and GameOfLife.draw() into an offscreen Graphics2D on a
+ * randomly seeded board, stepped in the calling thread or in parallel on the common
+ * pool.  At the low density most cells die off within a few generations, leaving most
+ * tiles empty to be skipped.  (In the animation package as GameOfLife is package-private.)
+ * @author Shawn Waldon
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameOfLifeBenchmark {
+
+	@Param({"25", "100", "500", "2000"})
+	private int size;
+
+	/**
+	 * The percentage of the board seeded with cells
+	 */
+	@Param({"35", "1"})
+	private int density;
+
+	@Param({"false", "true"})
+	private boolean parallel;
+
+	private GameOfLife life;
+	private BufferedImage image;
+	private Graphics2D g;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		life = new GameOfLife(size, size, 2, 0, 0, Color.ORANGE, parallel ? ForkJoinPool.commonPool() : null);
+		Random random = new Random(42);
+		for (int i = 1; i <= size; i++) {
+			for (int j = 1; j <= size; j++) {
+				if (random.nextInt(100) < density)
+					life.addCell(i, j);
+			}
+		}
+		image = new BufferedImage(size * 2 + 4, size * 2 + 4, BufferedImage.TYPE_INT_ARGB);
+		g = image.createGraphics();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() {
+		g.dispose();
+	}
+
+	@Benchmark
+	public GameOfLife next() {
+		life.next();
+		return life;
+	}
+
+	@Benchmark
+	public GameOfLife draw() {
+		life.draw(g);
+		return life;
+	}
+}
@@ -3,14 +3,22 @@ package waldonsm.nimgame;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import javax.swing.SwingUtilities;
 
-import waldonsm.nimgame.ai.TakeMaximumPossibleAI;
+import waldonsm.nimgame.ai.PerfectPlayAI;
+import waldonsm.nimgame.gui.BoardZoom;
 import waldonsm.nimgame.gui.NimGamePanel;
+import waldonsm.nimgame.gui.SpriteCache;
+import waldonsm.nimgame.record.GameJournal;
 
 /**
  * The demo main class for the NimGame.
@@ -19,12 +27,45 @@ import waldonsm.nimgame.gui.NimGamePanel;
  */
 public class Main implements Runnable {
 
+	private final GameJournal journal;
+
+	/**
+	 * Creates the demo, without recording the games played
+	 */
+	public Main() {
+		this(null);
+	}
+
+	/**
+	 * Creates the demo
+	 * @param journal where to record the games played, or null not to
+	 */
+	public Main(GameJournal journal) {
+		this.journal = journal;
+	}
+
 	/**
 	 * An example main for the NimGame
-	 * @param args
+	 * @param args optionally, a journal file to record the games in
 	 */
-	public static void main(String[] args) {
-		SwingUtilities.invokeLater(new Main());
+	public static void main(String[] args) throws IOException {
+		// the bomb is read while Swing starts up
+		SpriteCache.CACHE.preload(SpriteCache.BOMB);
+		GameJournal journal = null;
+		if (args.length > 0) {
+			journal = GameJournal.open(new File(args[0]));
+			final GameJournal toClose = journal;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					try {
+						toClose.close();
+					} catch (IOException e) {
+						System.err.println("Could not close the journal: " + e);
+					}
+				}
+			});
+		}
+		SwingUtilities.invokeLater(new Main(journal));
 	}
 	
 	/**
@@ -35,8 +76,9 @@ public class Main implements Runnable {
 		JFrame frame = new JFrame("NimGame");
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		
-		final NimGamePanel panel = new NimGamePanel(45,5,true,new TakeMaximumPossibleAI(),true);
-		frame.add(panel);
+		final NimGamePanel panel = new NimGamePanel(45,5,true,new PerfectPlayAI(),true);
+		panel.setJournal(journal);
+		frame.add(new JScrollPane(panel));
 		
 		JPanel p2 = new JPanel();
 		JButton button = new JButton("Done");
@@ -52,8 +94,22 @@ public class Main implements Runnable {
 				panel.newGame(45, 5, true, true);
 			}
 		});
+		final JComboBox<BoardZoom> zoom = new JComboBox<BoardZoom>(BoardZoom.values());
+		zoom.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				panel.setZoom((BoardZoom) zoom.getSelectedItem());
+			}
+		});
+		final JCheckBox metrics = new JCheckBox("Metrics");
+		metrics.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				panel.setMetricsOverlayVisible(metrics.isSelected());
+			}
+		});
 		p2.add(button);
 		p2.add(button2);
+		p2.add(zoom);
+		p2.add(metrics);
 		frame.add(p2, BorderLayout.SOUTH);
 		
 		frame.pack();
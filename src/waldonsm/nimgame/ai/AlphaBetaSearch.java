@@ -0,0 +1,329 @@
+package waldonsm.nimgame.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Iterative deepening alpha-beta over win (1), loss (-1) and not known yet (0, what a
+ * position at the depth limit is worth).  A win or a loss is always proven, so it is stored
+ * in the transposition table as solved and the search ends as soon as the root is solved.
+ * <P>
+ * Work is shared out with "young brothers wait": at the root and at every node with at
+ * least SPLIT_DEPTH plies left, the first move is searched alone and then the rest are
+ * forked as tasks of their own.  When one of them produces a cutoff the others see it
+ * (through the chain of Splits) at their next node count flush and give up.
+ * @author Shawn Waldon
+ *
+ */
+final class AlphaBetaSearch extends TreeSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The fewest plies left at a node whose moves are searched in parallel
+	 */
+	private static final int SPLIT_DEPTH = 6;
+	/**
+	 * The deepest iteration (deeper ones could not be stored in the table)
+	 */
+	private static final int MAX_DEPTH = TranspositionTable.DEPTH_SOLVED - 1;
+
+	private volatile int depth;
+
+	AlphaBetaSearch(TranspositionTable table, SearchBoard board, long nodeLimit, BestMoveHolder best) {
+		super(table, board, nodeLimit, best);
+	}
+
+	/**
+	 * A node whose moves are being searched in parallel
+	 */
+	private static final class Split {
+		final Split parent;
+		/**
+		 * Set when one of the moves has produced a cutoff, so the rest are not needed
+		 */
+		volatile boolean cut;
+
+		Split(Split parent) {
+			this.parent = parent;
+		}
+
+		boolean isCut() {
+			for (Split s = this; s != null; s = s.parent) {
+				if (s.cut)
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The node count of one task, and whether it has been told to give up
+	 */
+	private final class Counter {
+		final Split split;
+		int count;
+		boolean halted;
+
+		Counter(Split split) {
+			this.split = split;
+		}
+
+		/**
+		 * Counts a node
+		 * @return true if the task should give up
+		 */
+		boolean visit() {
+			if (++count == FLUSH_NODES) {
+				count = 0;
+				halted |= addNodes(FLUSH_NODES) || split.isCut();
+			}
+			return halted;
+		}
+
+		boolean check() {
+			halted |= isStopped() || split.isCut();
+			return halted;
+		}
+
+		void flush() {
+			addNodes(count);
+			count = 0;
+		}
+	}
+
+	/**
+	 * Searches one move of a Split
+	 */
+	private final class Child extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private final SearchBoard b;
+		/**
+		 * The move of the Split's position that leads to b
+		 */
+		final long move;
+		private final int depth, alpha, beta;
+		private final Split split;
+
+		Child(SearchBoard b, long move, int depth, int alpha, int beta, Split split) {
+			this.b = b;
+			this.move = move;
+			this.depth = depth;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.split = split;
+		}
+
+		@Override
+		protected Integer compute() {
+			Counter c = new Counter(split);
+			int v = search(b, depth, alpha, beta, c);
+			c.flush();
+			// a value this low for the opponent is a cutoff for the Split
+			if (v != ABORTED && v <= alpha) {
+				split.cut = true;
+			}
+			return v;
+		}
+	}
+
+	@Override
+	protected void compute() {
+		long[] moves = board.listMoves();
+		int[] values = new int[moves.length];
+		offer(moves[0]);
+		for (int d = 1; d <= MAX_DEPTH; d++) {
+			Split split = new Split(null);
+			Counter c = new Counter(split);
+			int alpha = -1;
+			int first = child(board, moves[0], d, alpha, 1, c);
+			values[0] = first;
+			if (first != ABORTED)
+				alpha = Math.max(alpha, first);
+			Child[] rest = null;
+			if (first != ABORTED && alpha < 1 && moves.length > 1) {
+				rest = new Child[moves.length - 1];
+				for (int k = 1; k < moves.length; k++) {
+					SearchBoard b = board.copy();
+					b.take(SearchBoard.heapOf(moves[k]), SearchBoard.takeOf(moves[k]));
+					rest[k - 1] = new Child(b, moves[k], d - 1, -1, -alpha, split);
+				}
+				invokeAll(rest);
+				for (int k = 1; k < moves.length; k++) {
+					int v = rest[k - 1].join();
+					values[k] = (v == ABORTED) ? ABORTED : -v;
+				}
+			} else {
+				for (int k = 1; k < moves.length; k++) {
+					values[k] = ABORTED;
+				}
+			}
+			c.flush();
+			// a proven win is worth playing even if the iteration was cut short
+			int win = -1;
+			for (int k = 0; k < moves.length && win < 0; k++) {
+				if (values[k] == 1)
+					win = k;
+			}
+			if (win >= 0) {
+				offer(moves[win]);
+				solved();
+				break;
+			}
+			if (isStopped())
+				break;
+			// best first, otherwise keeping the order of the last iteration
+			long[] sorted = new long[moves.length];
+			int n = 0;
+			for (int v = 0; v >= -1; v--) {
+				for (int k = 0; k < moves.length; k++) {
+					if (values[k] == v)
+						sorted[n++] = moves[k];
+				}
+			}
+			moves = sorted;
+			offer(moves[0]);
+			depth = d;
+			if (n == 0 || !contains(values, 0)) {
+				// every move loses, and the first one lasted longest
+				solved();
+				break;
+			}
+		}
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int v: values) {
+			if (v == value)
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Makes a move of b, searches the position after it and takes it back
+	 * @return the value of the move for the player making it, or ABORTED
+	 */
+	private int child(SearchBoard b, long move, int depth, int alpha, int beta, Counter c) {
+		int take = SearchBoard.takeOf(move);
+		int j = b.take(SearchBoard.heapOf(move), take);
+		int v = search(b, depth - 1, -beta, -alpha, c);
+		b.untake(j, take);
+		return (v == ABORTED) ? ABORTED : -v;
+	}
+
+	/**
+	 * Searches a position to the given depth
+	 * @return the value for the player to move, or ABORTED
+	 */
+	private int search(SearchBoard b, int depth, int alpha, int beta, Counter c) {
+		if (c.visit())
+			return ABORTED;
+		if (!b.hasMove())
+			return b.terminalValue();
+		if (depth == 0)
+			return 0;
+		long key = b.key();
+		long entry = table.probe(key);
+		int ttHeap = -1, ttTake = 0;
+		if (entry != 0) {
+			int v = TranspositionTable.value(entry);
+			int d = TranspositionTable.depth(entry);
+			if (d == TranspositionTable.DEPTH_SOLVED)
+				return v;
+			if (d >= depth) {
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER && v >= beta)
+						|| (bound == TranspositionTable.UPPER && v <= alpha))
+					return v;
+			}
+			if (b.isMove(TranspositionTable.heap(entry), TranspositionTable.take(entry))) {
+				ttHeap = TranspositionTable.heap(entry);
+				ttTake = TranspositionTable.take(entry);
+			}
+		}
+		int alphaOrig = alpha;
+		int best = -2;
+		long bestMove = -1;
+		if (ttTake != 0) {
+			bestMove = SearchBoard.pack(ttHeap, ttTake);
+			best = child(b, bestMove, depth, alpha, beta, c);
+			if (best == ABORTED)
+				return ABORTED;
+			alpha = Math.max(alpha, best);
+		}
+		if (alpha < beta && depth >= SPLIT_DEPTH) {
+			long[] moves = b.listMoves();
+			int k = 0;
+			if (best == -2) {
+				bestMove = moves[k++];
+				best = child(b, bestMove, depth, alpha, beta, c);
+				if (best == ABORTED)
+					return ABORTED;
+				alpha = Math.max(alpha, best);
+			}
+			if (alpha < beta && k < moves.length) {
+				Split split = new Split(c.split);
+				Child[] rest = new Child[moves.length - k];
+				int n = 0;
+				for (; k < moves.length; k++) {
+					if (moves[k] == bestMove)
+						continue;
+					SearchBoard copy = b.copy();
+					copy.take(SearchBoard.heapOf(moves[k]), SearchBoard.takeOf(moves[k]));
+					rest[n++] = new Child(copy, moves[k], depth - 1, -beta, -alpha, split);
+				}
+				if (n < rest.length) {
+					rest = Arrays.copyOf(rest, n);
+				}
+				invokeAll(rest);
+				for (Child task: rest) {
+					int v = task.join();
+					if (v == ABORTED)
+						continue;
+					if (-v > best) {
+						best = -v;
+						bestMove = task.move;
+					}
+				}
+				if (c.check())
+					return ABORTED;
+			}
+		} else {
+			for (int i = b.heaps.length - 1; i >= 0 && alpha < beta; i--) {
+				int h = b.heaps[i];
+				if (h < b.min)
+					break;
+				if (!b.isCanonical(i))
+					continue;
+				for (int k = b.countMoves(h) - 1; k >= 0 && alpha < beta; k--) {
+					int take = b.moves.get(k);
+					if (i == ttHeap && take == ttTake)
+						continue;
+					long move = SearchBoard.pack(i, take);
+					int v = child(b, move, depth, alpha, beta, c);
+					if (v == ABORTED)
+						return ABORTED;
+					if (v > best) {
+						best = v;
+						bestMove = move;
+					}
+					alpha = Math.max(alpha, v);
+				}
+			}
+		}
+		int bound = (best <= alphaOrig) ? TranspositionTable.UPPER
+				: (best >= beta) ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		table.store(key, (best == 0) ? depth : TranspositionTable.DEPTH_SOLVED, best, bound,
+				SearchBoard.heapOf(bestMove), SearchBoard.takeOf(bestMove));
+		return best;
+	}
+
+}
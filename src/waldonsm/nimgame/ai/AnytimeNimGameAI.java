@@ -0,0 +1,27 @@
+package waldonsm.nimgame.ai;
+
+/**
+ * A NimGameAI that can be stopped at any time and still give an answer.  Instead of
+ * returning one move at the end, search keeps offering the best move it has found so far,
+ * so a caller with a deadline (see AsyncNimGameAI) can take whatever it has when time runs
+ * out.
+ * @author Shawn Waldon
+ *
+ */
+public interface AnytimeNimGameAI extends NimGameAI {
+
+	/**
+	 * Searches for the move to make, offering each better move to best as it is found.
+	 * <P>
+	 * NOTES: Every move offered must be between (inclusive) 1 and the minimum of
+	 * maxNumTakable and numLeft, and a move should be offered as early as possible.  The
+	 * search returns when it is finished or soon after best.isStopped() becomes true (or
+	 * the thread is interrupted).
+	 * 
+	 * @param numLeft the number of things left in the pile
+	 * @param maxNumTakable the maximum number of things that a player can take in one turn
+	 * @param lastTakenLoses true if the goal is to force the opponent to take the last thing
+	 * @param best where the best move found so far is kept
+	 */
+	void search(int numLeft, int maxNumTakable, boolean lastTakenLoses, BestMoveHolder best);
+}
@@ -0,0 +1,296 @@
+package waldonsm.nimgame.ai;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import waldonsm.nimgame.game.NimRules;
+import waldonsm.nimgame.metrics.NimGameMetrics;
+
+/**
+ * Runs a NimGameAI on a background thread with a time budget, so that the caller (the
+ * GUI) never waits for it.
+ * <P>
+ * Each call to choose starts a Request.  The move is handed to the listener exactly once,
+ * through the given executor (SwingUtilities.invokeLater for the GUI), and is one of:
+ * <UL>
+ * <LI>the AI's own answer, if it answers within the budget;
+ * <LI>the best move so far, if the AI is an AnytimeNimGameAI that is still searching when
+ * the budget runs out (the search is then stopped);
+ * <LI>the fallback AI's answer, if there is no other, the AI throws (an exception, or an
+ * error such as a stack overflow), or it gives nothing.
+ * </UL>
+ * The move is always legal: an illegal one is replaced by the fallback's, with the FAILED
+ * outcome.  A request that runs out of time is cancelled (interrupting the AI's thread).  Requests
+ * for one AsyncNimGameAI run one at a time on their own thread, so the AI is never called
+ * concurrently, even if an AI that ignores interrupts is still busy with an old request.
+ * The thread goes away when it has been idle for a while.  How long each call to the AI
+ * takes, on its own thread, is recorded in NimGameMetrics.
+ * @author Shawn Waldon
+ *
+ */
+public class AsyncNimGameAI {
+
+	/**
+	 * How the move handed to the listener was chosen
+	 */
+	public enum Outcome {
+		/** The AI answered within the budget */
+		COMPLETED,
+		/** The budget ran out and the anytime AI's best move so far was used */
+		BEST_SO_FAR,
+		/** The budget ran out with no move from the AI, so the fallback was used */
+		FALLBACK,
+		/** The AI threw or chose an illegal move, so the fallback was used */
+		FAILED
+	}
+
+	/**
+	 * Receives the move chosen for a Request
+	 */
+	public interface Listener {
+
+		/**
+		 * Called once per Request that is not cancelled first, through the request's
+		 * executor
+		 * @param numToTake the number of things to take
+		 * @param outcome how the move was chosen
+		 * @param failure what the AI threw if the outcome is FAILED, otherwise null
+		 */
+		void moveChosen(int numToTake, Outcome outcome, Throwable failure);
+	}
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private static final ThreadFactory DAEMONS = new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "NimGameAI-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	};
+	/**
+	 * Enforces the budgets of every AsyncNimGameAI
+	 */
+	private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(DAEMONS);
+
+	private final NimGameAI ai;
+	private final NimGameAI fallback;
+	private final ThreadPoolExecutor worker;
+
+	/**
+	 * Creates an AsyncNimGameAI for the given AI that falls back to taking the maximum
+	 * @param ai the AI
+	 */
+	public AsyncNimGameAI(NimGameAI ai) {
+		this(ai, new TakeMaximumPossibleAI());
+	}
+
+	/**
+	 * Creates an AsyncNimGameAI for the given AI and fallback AI
+	 * @param ai the AI
+	 * @param fallback the AI used when ai gives no move, which must be fast and is called on
+	 * the deadline thread
+	 */
+	public AsyncNimGameAI(NimGameAI ai, NimGameAI fallback) {
+		if (ai == null || fallback == null)
+			throw new NullPointerException();
+		this.ai = ai;
+		this.fallback = fallback;
+		worker = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), DAEMONS);
+		worker.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Returns the AI this runs
+	 * @return the AI
+	 */
+	public NimGameAI getAI() {
+		return ai;
+	}
+
+	/**
+	 * Starts choosing a move in the background
+	 * @param numLeft the number of things left in the pile
+	 * @param maxNumTakable the maximum number of things that a player can take in one turn
+	 * @param lastTakenLoses true if the goal is to force the opponent to take the last thing
+	 * @param budgetMillis how long the AI may take
+	 * @param executor runs the listener, e.g. on the EDT
+	 * @param listener receives the move
+	 * @return the Request, which can be cancelled
+	 */
+	public Request choose(int numLeft, int maxNumTakable, boolean lastTakenLoses, long budgetMillis,
+			Executor executor, Listener listener) {
+		Request request = new Request(numLeft, maxNumTakable, lastTakenLoses, executor, listener);
+		request.start(budgetMillis);
+		return request;
+	}
+
+	/**
+	 * One move being chosen
+	 */
+	public final class Request {
+		private final int numLeft, maxNumTakable;
+		private final boolean lastTakenLoses;
+		private final Executor executor;
+		private final Listener listener;
+		private final BestMoveHolder best = new BestMoveHolder();
+		/**
+		 * Set once the move has been handed over or the request cancelled
+		 */
+		private final AtomicBoolean finished = new AtomicBoolean();
+		private volatile Future<?> task, timeout;
+
+		private Request(int numLeft, int maxNumTakable, boolean lastTakenLoses, Executor executor,
+				Listener listener) {
+			this.numLeft = numLeft;
+			this.maxNumTakable = maxNumTakable;
+			this.lastTakenLoses = lastTakenLoses;
+			this.executor = executor;
+			this.listener = listener;
+		}
+
+		private void start(long budgetMillis) {
+			task = worker.submit(new Runnable() {
+				public void run() {
+					think();
+				}
+			});
+			timeout = deadlines.schedule(new Runnable() {
+				public void run() {
+					expire();
+				}
+			}, budgetMillis, TimeUnit.MILLISECONDS);
+			// in case the AI finished before the timeout was there to cancel
+			if (finished.get()) {
+				timeout.cancel(false);
+			}
+		}
+
+		/**
+		 * Runs the AI (on the worker thread)
+		 */
+		private void think() {
+			if (finished.get())
+				return;
+			try {
+				if (ai instanceof AnytimeNimGameAI) {
+					long start = System.nanoTime();
+					((AnytimeNimGameAI) ai).search(numLeft, maxNumTakable, lastTakenLoses, best);
+					NimGameMetrics.METRICS.aiChose(System.nanoTime() - start);
+					int take = best.get();
+					if (take != 0) {
+						finish(take, best.isStopped() ? Outcome.BEST_SO_FAR : Outcome.COMPLETED);
+					} else {
+						finish(fallback.chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses), Outcome.FALLBACK);
+					}
+				} else {
+					long start = System.nanoTime();
+					int take = ai.chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses);
+					NimGameMetrics.METRICS.aiChose(System.nanoTime() - start);
+					finish(take, Outcome.COMPLETED);
+				}
+			} catch (RuntimeException e) {
+				failed(e);
+			} catch (StackOverflowError e) {
+				// the AI recursed too deep, which leaves the JVM as healthy as an exception does
+				failed(e);
+			} catch (VirtualMachineError e) {
+				throw e;
+			} catch (Error e) {
+				failed(e);
+			}
+		}
+
+		/**
+		 * Hands over the fallback's move when the AI has thrown (on the worker thread)
+		 */
+		private void failed(Throwable failure) {
+			if (!finished.get()) {
+				finish(fallback.chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses), Outcome.FAILED, failure);
+			}
+		}
+
+		/**
+		 * Hands over the best move there is when the budget runs out (on the deadline thread)
+		 */
+		private void expire() {
+			if (finished.get())
+				return;
+			best.stop();
+			int take = best.get();
+			if (take != 0) {
+				finish(take, Outcome.BEST_SO_FAR);
+			} else {
+				finish(fallback.chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses), Outcome.FALLBACK);
+			}
+			task.cancel(true);
+		}
+
+		private void finish(int take, Outcome outcome) {
+			finish(take, outcome, null);
+		}
+
+		private void finish(int take, Outcome outcome, Throwable failure) {
+			if (!finished.compareAndSet(false, true))
+				return;
+			Future<?> t = timeout;
+			if (t != null) {
+				t.cancel(false);
+			}
+			if (!NimRules.isLegalTake(take, numLeft, maxNumTakable)) {
+				if (failure == null) {
+					failure = new IllegalStateException("AI just attempted to take illegal value: " + take);
+				}
+				if (outcome == Outcome.COMPLETED || outcome == Outcome.BEST_SO_FAR) {
+					take = fallback.chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses);
+				}
+				if (!NimRules.isLegalTake(take, numLeft, maxNumTakable)) {
+					// the fallback is wrong too, so take the one thing that is always legal
+					take = 1;
+				}
+				outcome = Outcome.FAILED;
+			}
+			final int move = take;
+			final Outcome how = outcome;
+			final Throwable cause = failure;
+			executor.execute(new Runnable() {
+				public void run() {
+					listener.moveChosen(move, how, cause);
+				}
+			});
+		}
+
+		/**
+		 * Cancels the request.  The listener is not called unless it already has been (or
+		 * has already been handed to the executor).
+		 */
+		public void cancel() {
+			finished.set(true);
+			best.stop();
+			Future<?> t = task;
+			if (t != null) {
+				t.cancel(true);
+			}
+			t = timeout;
+			if (t != null) {
+				t.cancel(false);
+			}
+		}
+
+		/**
+		 * Returns true if the move has been handed over or the request cancelled
+		 * @return true if the request is finished
+		 */
+		public boolean isDone() {
+			return finished.get();
+		}
+	}
+
+}
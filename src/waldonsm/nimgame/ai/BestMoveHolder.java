@@ -0,0 +1,47 @@
+package waldonsm.nimgame.ai;
+
+/**
+ * Holds the best move an AnytimeNimGameAI has found so far, and tells it when to stop.
+ * The search thread offers moves as it finds better ones and any other thread may read the
+ * latest one or stop the search at any time.
+ * @author Shawn Waldon
+ *
+ */
+public final class BestMoveHolder {
+
+	private volatile int numToTake;
+	private volatile boolean stopped;
+
+	/**
+	 * Records a move as the best found so far, replacing any earlier one
+	 * @param numToTake the number of things to take
+	 */
+	public void offer(int numToTake) {
+		this.numToTake = numToTake;
+	}
+
+	/**
+	 * Returns the best move found so far
+	 * @return the number of things to take, or 0 if no move has been offered yet
+	 */
+	public int get() {
+		return numToTake;
+	}
+
+	/**
+	 * Asks the search to stop as soon as it can
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Returns true once the search has been asked to stop.  Searches should check this
+	 * regularly.
+	 * @return true if the search should stop
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+}
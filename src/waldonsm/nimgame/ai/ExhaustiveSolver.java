@@ -0,0 +1,73 @@
+package waldonsm.nimgame.ai;
+
+/**
+ * Solves the subtraction game by brute force: a position is a win for the player to move
+ * if some move leads to a position that is a loss.  Results are memoized as the table is
+ * grown, so this is only meant as a reference to check faster AIs against.
+ * @author Shawn Waldon
+ *
+ */
+public class ExhaustiveSolver {
+
+	private final int maxNumTakable;
+	private final boolean lastTakenLoses;
+	/**
+	 * win[n] is true if the player to move with n things left wins, valid up to solved
+	 */
+	private boolean[] win = new boolean[16];
+	private int solved;
+
+	/**
+	 * Creates a solver for the given rules
+	 * @param maxNumTakable the maximum number of things that can be taken in one turn
+	 * @param lastTakenLoses true if the player who takes the last thing loses
+	 */
+	public ExhaustiveSolver(int maxNumTakable, boolean lastTakenLoses) {
+		if (maxNumTakable <= 0)
+			throw new IllegalArgumentException();
+		this.maxNumTakable = maxNumTakable;
+		this.lastTakenLoses = lastTakenLoses;
+		// with nothing left the previous player took the last thing
+		win[0] = lastTakenLoses;
+	}
+
+	/**
+	 * Returns true if the player to move with numLeft things left can force a win
+	 * @param numLeft the number of things left in the pile
+	 * @return true if the position is a win for the player to move
+	 */
+	public boolean isWin(int numLeft) {
+		if (numLeft < 0)
+			throw new IllegalArgumentException();
+		if (numLeft >= win.length) {
+			boolean[] bigger = new boolean[Math.max(numLeft + 1, win.length * 2)];
+			System.arraycopy(win, 0, bigger, 0, solved + 1);
+			win = bigger;
+		}
+		for (int n = solved + 1; n <= numLeft; n++) {
+			boolean w = false;
+			for (int take = 1; take <= Math.min(n, maxNumTakable) && !w; take++) {
+				w = !win[n - take];
+			}
+			win[n] = w;
+		}
+		solved = Math.max(solved, numLeft);
+		return win[numLeft];
+	}
+
+	/**
+	 * Returns the rule this solver was created with
+	 * @return true if the player who takes the last thing loses
+	 */
+	public boolean isLastTakenLoses() {
+		return lastTakenLoses;
+	}
+
+	/**
+	 * Returns the maximum number of things that can be taken in one turn
+	 * @return the maximum number of things that can be taken in one turn
+	 */
+	public int getMaxNumTakable() {
+		return maxNumTakable;
+	}
+}
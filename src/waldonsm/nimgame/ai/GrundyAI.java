@@ -0,0 +1,70 @@
+package waldonsm.nimgame.ai;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import waldonsm.nimgame.game.GrundyTable;
+import waldonsm.nimgame.game.HeapValues;
+import waldonsm.nimgame.game.Move;
+import waldonsm.nimgame.game.Position;
+import waldonsm.nimgame.game.SubtractionGame;
+import waldonsm.nimgame.game.SubtractionSet;
+
+/**
+ * An AI for the general game that plays from the Sprague-Grundy values of the heaps (see
+ * SubtractionGame).  The tables are kept per subtraction set, so after a short warm-up
+ * each move costs time proportional to the number of heaps, not their sizes.
+ * @author Shawn Waldon
+ *
+ */
+public class GrundyAI implements MultiHeapNimGameAI {
+
+	private final ConcurrentMap<SubtractionSet, SubtractionGame[]> games =
+		new ConcurrentHashMap<SubtractionSet, SubtractionGame[]>();
+
+	/**
+	 * Plays the single pile game as one heap taking 1 to maxNumTakable.
+	 */
+	@Override
+	public int chooseNumToTake(int numLeft, int maxNumTakable,
+			boolean lastTakenLoses) {
+		Position position = new Position(SubtractionSet.upTo(maxNumTakable), numLeft);
+		return chooseMove(position, lastTakenLoses).getTake();
+	}
+
+	/**
+	 * Returns a winning move if there is one, otherwise the smallest legal move.
+	 */
+	@Override
+	public Move chooseMove(Position position, boolean lastTakenLoses) {
+		return getGame(position.getMoves(), lastTakenLoses).bestMove(position);
+	}
+
+	/**
+	 * Returns the game for the given rules, sharing one table between both goals
+	 * @param moves the subtraction set
+	 * @param lastTakenLoses true if the player who takes the last thing loses
+	 * @return the game
+	 */
+	public SubtractionGame getGame(SubtractionSet moves, boolean lastTakenLoses) {
+		SubtractionGame[] pair = games.get(moves);
+		if (pair == null) {
+			HeapValues table = createValues(moves);
+			pair = new SubtractionGame[] {
+					new SubtractionGame(table, false), new SubtractionGame(table, true)};
+			SubtractionGame[] existing = games.putIfAbsent(moves, pair);
+			if (existing != null)
+				pair = existing;
+		}
+		return pair[lastTakenLoses ? 1 : 0];
+	}
+
+	/**
+	 * Creates the heap values of a subtraction set when it is first played
+	 * @param moves the subtraction set
+	 * @return a new GrundyTable for the set
+	 */
+	protected HeapValues createValues(SubtractionSet moves) {
+		return new GrundyTable(moves);
+	}
+}
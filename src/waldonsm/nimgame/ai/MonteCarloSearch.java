@@ -0,0 +1,365 @@
+package waldonsm.nimgame.ai;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monte Carlo tree search (UCT with random playouts), parallelized at the root: every
+ * thread grows a tree of its own and adds its root visit counts to a shared array, from
+ * which the most visited move is offered as the search goes.
+ * <P>
+ * Positions that are won or lost are marked as proven on the way back up the tree (a win
+ * if some move leads to a proven loss, a loss if every move leads to a proven win), are
+ * stored in the transposition table as solved, and are looked up there when a node is
+ * expanded, so the threads (and earlier alpha-beta searches) share what they have proven.
+ * Each tree stops growing at its share of the memory budget, and playouts go on from its
+ * leaves after that.
+ * @author Shawn Waldon
+ *
+ */
+final class MonteCarloSearch extends TreeSearch {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A generous estimate of the memory used by one tree node
+	 */
+	static final int NODE_BYTES = 64;
+	/**
+	 * The UCT exploration constant
+	 */
+	private static final double EXPLORATION = 1.4;
+	/**
+	 * The longest playout, after which the game is called a draw
+	 */
+	private static final int PLAYOUT_LIMIT = 10000;
+	/**
+	 * The number of playouts a thread runs between publishing its root visit counts
+	 */
+	private static final int PUBLISH_PLAYOUTS = 256;
+
+	private final int threads;
+	private final long maxTreeNodes;
+	private final long[] rootMoves;
+	private final AtomicLongArray rootVisits;
+	private final AtomicLong playouts = new AtomicLong();
+
+	/**
+	 * Creates a search
+	 * @param threads the number of trees to grow at once
+	 * @param treeBytes the memory budget of all the trees together
+	 */
+	MonteCarloSearch(TranspositionTable table, SearchBoard board, long nodeLimit, BestMoveHolder best,
+			int threads, long treeBytes) {
+		super(table, board, nodeLimit, best);
+		this.threads = threads;
+		maxTreeNodes = Math.max(1, treeBytes / NODE_BYTES / threads);
+		rootMoves = board.listMoves();
+		rootVisits = new AtomicLongArray(rootMoves.length);
+	}
+
+	/**
+	 * A node of a tree: the position after a move
+	 */
+	private static final class Node {
+		final long move;
+		Node[] children;
+		int visits;
+		/**
+		 * The playouts won by the player who made the move, a draw counting half
+		 */
+		double wins;
+		/**
+		 * The proven value for the player to move, 0 if not known
+		 */
+		int proven;
+
+		Node(long move) {
+			this.move = move;
+		}
+	}
+
+	@Override
+	protected void compute() {
+		offer(rootMoves[0]);
+		Tree[] trees = new Tree[threads];
+		for (int i = 0; i < threads; i++) {
+			trees[i] = new Tree(i);
+		}
+		invokeAll(trees);
+		if (!isSolved()) {
+			offerMostVisited();
+		}
+	}
+
+	@Override
+	long getPlayouts() {
+		return playouts.get();
+	}
+
+	private void offerMostVisited() {
+		int best = 0;
+		for (int k = 1; k < rootMoves.length; k++) {
+			if (rootVisits.get(k) > rootVisits.get(best))
+				best = k;
+		}
+		offer(rootMoves[best]);
+	}
+
+	/**
+	 * The tree of one thread
+	 */
+	private final class Tree extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Random random;
+		private final SearchBoard b = board.copy(), scratch = board.copy();
+		private Node root;
+		private long size;
+		private int count;
+		private Node[] path = new Node[64];
+		private int[] undo = new int[64];
+		/**
+		 * The root visit counts already added to rootVisits
+		 */
+		private final int[] published = new int[rootMoves.length];
+
+		Tree(int index) {
+			random = new Random(System.nanoTime() * 31 + index);
+		}
+
+		@Override
+		protected void compute() {
+			root = new Node(0);
+			expand(root);
+			int run = 0;
+			while (!isStopped()) {
+				if (!playout())
+					break;
+				playouts.incrementAndGet();
+				if (root.proven != 0) {
+					finish();
+					break;
+				}
+				if (++run == PUBLISH_PLAYOUTS) {
+					run = 0;
+					publish();
+					offerMostVisited();
+				}
+			}
+			addNodes(count);
+			publish();
+		}
+
+		/**
+		 * Runs one playout: down the tree, expand, play randomly, and back up again
+		 * @return false if the search was stopped during the playout
+		 */
+		private boolean playout() {
+			Node node = root;
+			int depth = 0;
+			while (node.children != null && node.proven == 0) {
+				node = select(node);
+				push(depth++, node);
+			}
+			double result;
+			if (node.proven != 0) {
+				result = (node.proven > 0) ? 1 : 0;
+			} else if (!b.hasMove()) {
+				node.proven = b.terminalValue();
+				result = (node.proven > 0) ? 1 : 0;
+			} else {
+				if (node.visits > 0 && size < maxTreeNodes) {
+					expand(node);
+					if (node.proven == 0) {
+						node = node.children[random.nextInt(node.children.length)];
+						push(depth++, node);
+					}
+				}
+				if (node.proven != 0) {
+					result = (node.proven > 0) ? 1 : 0;
+				} else {
+					scratch.copyFrom(b);
+					int v = rollout(scratch);
+					if (v == ABORTED) {
+						unwind(depth);
+						return false;
+					}
+					result = (v + 1) / 2.0;
+				}
+			}
+			// result is for the player to move at the leaf, each node counts it for the
+			// player who moved into it
+			for (int d = depth - 1; d >= 0; d--) {
+				Node n = path[d];
+				n.visits++;
+				n.wins += 1 - result;
+				result = 1 - result;
+				b.untake(undo[d], SearchBoard.takeOf(n.move));
+				Node parent = (d == 0) ? root : path[d - 1];
+				prove(parent, n);
+			}
+			root.visits++;
+			return true;
+		}
+
+		private void push(int depth, Node node) {
+			if (depth == path.length) {
+				path = Arrays.copyOf(path, depth * 2);
+				undo = Arrays.copyOf(undo, depth * 2);
+			}
+			path[depth] = node;
+			undo[depth] = b.take(SearchBoard.heapOf(node.move), SearchBoard.takeOf(node.move));
+			countNode();
+		}
+
+		/**
+		 * Counts a node
+		 * @return true if the search should stop
+		 */
+		private boolean countNode() {
+			if (++count < FLUSH_NODES)
+				return false;
+			int n = count;
+			count = 0;
+			return addNodes(n);
+		}
+
+		private void unwind(int depth) {
+			for (int d = depth - 1; d >= 0; d--) {
+				b.untake(undo[d], SearchBoard.takeOf(path[d].move));
+			}
+		}
+
+		/**
+		 * Picks the child to go down to: a proven win if there is one, then an unvisited
+		 * child, then by UCT, avoiding moves proven to lose while there are others
+		 */
+		private Node select(Node node) {
+			Node best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			double log = Math.log(node.visits + 1);
+			for (Node c: node.children) {
+				if (c.proven < 0)
+					return c;
+				double score;
+				if (c.proven > 0)
+					score = -1;
+				else if (c.visits == 0)
+					score = Double.MAX_VALUE;
+				else
+					score = c.wins / c.visits + EXPLORATION * Math.sqrt(log / c.visits);
+				if (score > bestScore) {
+					best = c;
+					bestScore = score;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Gives a node the moves of b, which is its position, as unvisited children, taking
+		 * any that are already solved from the table
+		 */
+		private void expand(Node node) {
+			long[] moves = (node == root) ? rootMoves : b.listMoves();
+			Node[] children = new Node[moves.length];
+			for (int k = 0; k < moves.length; k++) {
+				Node c = new Node(moves[k]);
+				int take = SearchBoard.takeOf(moves[k]);
+				int j = b.take(SearchBoard.heapOf(moves[k]), take);
+				if (!b.hasMove()) {
+					c.proven = b.terminalValue();
+				} else {
+					long entry = table.probe(b.key());
+					if (entry != 0 && TranspositionTable.depth(entry) == TranspositionTable.DEPTH_SOLVED) {
+						c.proven = TranspositionTable.value(entry);
+					}
+				}
+				b.untake(j, take);
+				children[k] = c;
+			}
+			node.children = children;
+			size += children.length;
+			prove(node, null);
+		}
+
+		/**
+		 * Marks a node as proven if its children prove it, and stores it in the table.  b
+		 * must be the node's position.
+		 * @param changed the child that may have just been proven, or null to check them all
+		 */
+		private void prove(Node node, Node changed) {
+			if (node.proven != 0 || node.children == null)
+				return;
+			if (changed != null && changed.proven == 0)
+				return;
+			int value = -1;
+			for (Node c: node.children) {
+				if (c.proven < 0) {
+					value = 1;
+					break;
+				}
+				if (c.proven == 0)
+					value = 0;
+			}
+			if (value != 0) {
+				node.proven = value;
+				table.store(b.key(), TranspositionTable.DEPTH_SOLVED, value, TranspositionTable.EXACT, -1, 0);
+			}
+		}
+
+		/**
+		 * Plays random moves from b to the end of the game
+		 * @return the value for the player to move at the start, 0 for a draw, or ABORTED
+		 */
+		private int rollout(SearchBoard b) {
+			int sign = 1;
+			for (int ply = 0; ply < PLAYOUT_LIMIT; ply++) {
+				if (!b.hasMove())
+					return sign * b.terminalValue();
+				if (countNode())
+					return ABORTED;
+				int live = b.firstLive();
+				int i = live + random.nextInt(b.heaps.length - live);
+				b.take(i, b.moves.get(random.nextInt(b.countMoves(b.heaps[i]))));
+				sign = -sign;
+			}
+			return 0;
+		}
+
+		private void publish() {
+			for (int k = 0; k < published.length; k++) {
+				int v = root.children[k].visits;
+				if (v != published[k]) {
+					rootVisits.addAndGet(k, v - published[k]);
+					published[k] = v;
+				}
+			}
+		}
+
+		/**
+		 * Offers the move that proves the root, or the one that lasted longest if every move
+		 * loses, and stops the search
+		 */
+		private void finish() {
+			int best = 0;
+			for (int k = 0; k < root.children.length; k++) {
+				Node c = root.children[k];
+				if (c.proven < 0) {
+					best = k;
+					break;
+				}
+				if (c.visits > root.children[best].visits)
+					best = k;
+			}
+			offer(rootMoves[best]);
+			solved();
+			stop();
+		}
+	}
+
+}
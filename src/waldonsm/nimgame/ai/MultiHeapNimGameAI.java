@@ -0,0 +1,25 @@
+package waldonsm.nimgame.ai;
+
+import waldonsm.nimgame.game.Move;
+import waldonsm.nimgame.game.Position;
+
+/**
+ * An AI for the general game, with any number of heaps and any subtraction set.  It still
+ * answers the single pile game of the GUI through NimGameAI.
+ * @author Shawn Waldon
+ *
+ */
+public interface MultiHeapNimGameAI extends NimGameAI {
+
+	/**
+	 * Asks the AI for its move in the given position.
+	 * <P>
+	 * NOTES: The move returned must be legal in the position (see Position.isLegal), and
+	 * this method is only called when the position has a legal move.
+	 * 
+	 * @param position the heaps and the subtraction set
+	 * @param lastTakenLoses true if the goal is to force the opponent to take the last thing
+	 * @return the move the AI chooses
+	 */
+	Move chooseMove(Position position, boolean lastTakenLoses);
+}
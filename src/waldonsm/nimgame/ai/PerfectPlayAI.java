@@ -0,0 +1,73 @@
+package waldonsm.nimgame.ai;
+
+/**
+ * An AI that plays the subtraction game perfectly in constant time.
+ * <P>
+ * With moves of 1 to m, the positions the player to move loses from repeat every m+1
+ * things: they are the multiples of m+1 when the last thing taken wins, and one more than
+ * the multiples of m+1 when the last thing taken loses.  From any other position the AI
+ * takes just enough to leave the opponent on one of them, otherwise it takes 1 and hopes.
+ * <P>
+ * Running this class checks it against the ExhaustiveSolver (see verify).
+ * @author Shawn Waldon
+ *
+ */
+public class PerfectPlayAI implements NimGameAI {
+
+	/**
+	 * Returns the number that leaves the opponent in a losing position, or 1 if there
+	 * is none.
+	 */
+	@Override
+	public int chooseNumToTake(int numLeft, int maxNumTakable,
+			boolean lastTakenLoses) {
+		// long arithmetic as maxNumTakable + 1 may overflow
+		long period = (long) maxNumTakable + 1;
+		long take = (lastTakenLoses ? (long) numLeft - 1 : numLeft) % period;
+		return (take == 0) ? 1 : (int) take;
+	}
+
+	/**
+	 * Checks every move this AI makes against the exhaustive solver for every pile size
+	 * up to maxPile and every maximum up to maxTakable, in both modes.  A move is wrong if
+	 * it is illegal or if it throws away a win.
+	 * @param maxPile the largest pile size to check
+	 * @param maxTakable the largest maximum number takable to check
+	 * @return the number of wrong moves found
+	 */
+	public static int verify(int maxPile, int maxTakable) {
+		PerfectPlayAI ai = new PerfectPlayAI();
+		int wrong = 0;
+		for (int m = 1; m <= maxTakable; m++) {
+			for (int mode = 0; mode < 2; mode++) {
+				boolean lastTakenLoses = (mode == 1);
+				ExhaustiveSolver solver = new ExhaustiveSolver(m, lastTakenLoses);
+				for (int n = 1; n <= maxPile; n++) {
+					int take = ai.chooseNumToTake(n, m, lastTakenLoses);
+					if (take < 1 || take > Math.min(n, m)
+							|| (solver.isWin(n) && solver.isWin(n - take))) {
+						System.err.println("Wrong move: took " + take + " of " + n + ", max " + m
+								+ (lastTakenLoses ? ", last taken loses" : ", last taken wins"));
+						wrong++;
+					}
+				}
+			}
+		}
+		return wrong;
+	}
+
+	/**
+	 * Runs verify, by default over piles up to 2000 and maximums up to 50.
+	 * @param args optionally the largest pile size and largest maximum to check
+	 */
+	public static void main(String[] args) {
+		int maxPile = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+		int maxTakable = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+		int wrong = verify(maxPile, maxTakable);
+		System.out.println("Checked piles up to " + maxPile + " with maximums up to " + maxTakable
+				+ ": " + (wrong == 0 ? "all moves optimal" : wrong + " wrong moves"));
+		if (wrong != 0) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package waldonsm.nimgame.ai;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import waldonsm.nimgame.game.Move;
+import waldonsm.nimgame.game.Position;
+import waldonsm.nimgame.game.SubtractionSet;
+import waldonsm.nimgame.metrics.NimGameMetrics;
+
+/**
+ * An AI that searches the game tree instead of knowing the answer, for games without a
+ * closed form solution (or to check the ones with one).  It works for any number of heaps
+ * and any subtraction set, in two modes:
+ * <UL>
+ * <LI>ALPHA_BETA: iterative deepening alpha-beta, which proves the result when the game
+ * is small enough and otherwise plays the best move of the deepest finished iteration</LI>
+ * <LI>MONTE_CARLO: Monte Carlo tree search, which plays the move most explored by random
+ * playouts (and also proves results it runs into)</LI>
+ * </UL>
+ * Both run on a fork-join pool shared by every SearchAI of the same parallelism, whose
+ * threads go away when idle, and share one fixed size lock-free TranspositionTable between
+ * all the threads (and between searches, so a game gets faster as it goes).  Memory is
+ * bounded by the budget given to the constructor, and every search stops after the node
+ * limit, so a move never takes more than a bounded time even without a deadline.  Closing
+ * the AI lets go of the table at once, for callers that make many of them.  As an AnytimeNimGameAI the best move so far is always available to an
+ * AsyncNimGameAI that cuts the search short.
+ * <P>
+ * The statistics of the last search (including nodes per second) are available from
+ * getLastStatistics and are also recorded in NimGameMetrics.
+ * @author Shawn Waldon
+ *
+ */
+public class SearchAI implements MultiHeapNimGameAI, AnytimeNimGameAI, Closeable {
+
+	/**
+	 * The kinds of search
+	 */
+	public enum Mode {ALPHA_BETA, MONTE_CARLO}
+
+	/**
+	 * The default memory budget, 16 MB
+	 */
+	public static final long DEFAULT_MEMORY_BYTES = 16L << 20;
+	/**
+	 * The default node limit of one search
+	 */
+	public static final long DEFAULT_NODE_LIMIT = 10000000L;
+
+	/**
+	 * The pools the searches run on, by parallelism
+	 */
+	private static final ConcurrentMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+	private final Mode mode;
+	private final long memoryBytes;
+	private final long nodeLimit;
+	private final ForkJoinPool pool;
+	/**
+	 * The table, null once closed
+	 */
+	private volatile TranspositionTable table;
+	private volatile SearchStatistics lastStatistics;
+
+	/**
+	 * Creates an alpha-beta AI with the default limits, using all the processors
+	 */
+	public SearchAI() {
+		this(Mode.ALPHA_BETA);
+	}
+
+	/**
+	 * Creates an AI with the default limits, using all the processors
+	 * @param mode the kind of search
+	 */
+	public SearchAI(Mode mode) {
+		this(mode, DEFAULT_MEMORY_BYTES, DEFAULT_NODE_LIMIT, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an AI
+	 * @param mode the kind of search
+	 * @param memoryBytes the memory budget: all of it goes to the transposition table for
+	 * alpha-beta, and a quarter of it for Monte Carlo, which grows its trees in the rest
+	 * @param nodeLimit the most nodes one search visits
+	 * @param parallelism the number of threads to search with
+	 */
+	public SearchAI(Mode mode, long memoryBytes, long nodeLimit, int parallelism) {
+		if (mode == null)
+			throw new NullPointerException();
+		if (memoryBytes <= 0 || nodeLimit <= 0 || parallelism <= 0)
+			throw new IllegalArgumentException();
+		this.mode = mode;
+		this.memoryBytes = memoryBytes;
+		this.nodeLimit = nodeLimit;
+		pool = poolFor(parallelism);
+		table = new TranspositionTable((mode == Mode.ALPHA_BETA) ? memoryBytes : memoryBytes / 4);
+	}
+
+	/**
+	 * Returns the shared pool of the given parallelism, creating it the first time
+	 */
+	private static ForkJoinPool poolFor(int parallelism) {
+		ForkJoinPool pool = pools.get(parallelism);
+		if (pool == null) {
+			// a pool starts no threads until it is used, so a losing one costs nothing
+			ForkJoinPool p = new ForkJoinPool(parallelism);
+			pool = pools.putIfAbsent(parallelism, p);
+			if (pool == null) {
+				pool = p;
+			} else {
+				p.shutdown();
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Plays the single pile game as one heap taking 1 to maxNumTakable.
+	 */
+	@Override
+	public int chooseNumToTake(int numLeft, int maxNumTakable,
+			boolean lastTakenLoses) {
+		Position position = new Position(SubtractionSet.upTo(maxNumTakable), numLeft);
+		return search(position, lastTakenLoses, new BestMoveHolder()).getTake();
+	}
+
+	/**
+	 * Searches until the position is solved or the node limit is reached.
+	 */
+	@Override
+	public Move chooseMove(Position position, boolean lastTakenLoses) {
+		return search(position, lastTakenLoses, new BestMoveHolder());
+	}
+
+	@Override
+	public void search(int numLeft, int maxNumTakable, boolean lastTakenLoses,
+			BestMoveHolder best) {
+		search(new Position(SubtractionSet.upTo(maxNumTakable), numLeft), lastTakenLoses, best);
+	}
+
+	/**
+	 * Searches a position, offering the number taken by each better move to best (which is
+	 * only meaningful for a single heap) and stopping early if best is stopped or the
+	 * calling thread is interrupted.
+	 * @param position the position, which must have a legal move
+	 * @param lastTakenLoses true if the goal is to force the opponent to take the last thing
+	 * @param best where the best move found so far is kept
+	 * @return the best move found
+	 * @throws IllegalStateException if the AI has been closed
+	 */
+	public Move search(Position position, boolean lastTakenLoses, BestMoveHolder best) {
+		TranspositionTable table = this.table;
+		if (table == null)
+			throw new IllegalStateException("SearchAI is closed");
+		SearchBoard board = new SearchBoard(position, lastTakenLoses);
+		if (!board.hasMove())
+			throw new IllegalArgumentException("No legal move in " + position);
+		table.nextAge();
+		TreeSearch search;
+		if (mode == Mode.ALPHA_BETA) {
+			search = new AlphaBetaSearch(table, board, nodeLimit, best);
+		} else {
+			search = new MonteCarloSearch(table, board, nodeLimit, best, pool.getParallelism(),
+					memoryBytes - table.getMemoryBytes());
+		}
+		long start = System.nanoTime();
+		pool.execute(search);
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					search.get();
+					break;
+				} catch (InterruptedException e) {
+					// stop, but still wait for the threads so they are not left running
+					interrupted = true;
+					search.stop();
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search failed", e.getCause());
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		long nanos = System.nanoTime() - start;
+		lastStatistics = new SearchStatistics(mode, search.getNodes(), nanos, search.getDepth(),
+				search.getPlayouts(), search.isSolved());
+		NimGameMetrics.METRICS.aiSearched(search.getNodes(), nanos);
+		long move = search.getBestMove();
+		return new Move(board.indexIn(position, SearchBoard.heapOf(move)), SearchBoard.takeOf(move));
+	}
+
+	/**
+	 * Returns the statistics of the last search to finish
+	 * @return the statistics, or null if there has not been a search
+	 */
+	public SearchStatistics getLastStatistics() {
+		return lastStatistics;
+	}
+
+	/**
+	 * Returns the kind of search
+	 * @return the mode
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the memory budget
+	 * @return the memory budget in bytes
+	 */
+	public long getMemoryBytes() {
+		return memoryBytes;
+	}
+
+	/**
+	 * Returns the most nodes one search visits
+	 * @return the node limit
+	 */
+	public long getNodeLimit() {
+		return nodeLimit;
+	}
+
+	/**
+	 * Returns the transposition table shared by the searches
+	 * @return the transposition table, or null if the AI has been closed
+	 */
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Lets go of the transposition table.  The AI cannot search after this; a search
+	 * already running finishes with the table it has.
+	 */
+	public void close() {
+		table = null;
+	}
+}
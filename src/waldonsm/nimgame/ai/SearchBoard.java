@@ -0,0 +1,214 @@
+package waldonsm.nimgame.ai;
+
+import java.util.Arrays;
+
+import waldonsm.nimgame.game.Position;
+import waldonsm.nimgame.game.SubtractionSet;
+
+/**
+ * The mutable position a search walks through.  The heaps are kept sorted, so positions
+ * that only differ in the order of their heaps are the same position (with the same key),
+ * and moves are made and unmade in place.  Heaps too small to move from never matter again
+ * and are left out of the key.  Each search thread has its own board.
+ * @author Shawn Waldon
+ *
+ */
+final class SearchBoard {
+
+	final SubtractionSet moves;
+	final int min;
+	final boolean lastTakenLoses;
+	/**
+	 * The heap sizes, smallest first
+	 */
+	final int[] heaps;
+	/**
+	 * Mixed into every key, so that the same heaps under other rules have another key
+	 */
+	private final long seed;
+
+	SearchBoard(Position position, boolean lastTakenLoses) {
+		moves = position.getMoves();
+		min = moves.getMin();
+		this.lastTakenLoses = lastTakenLoses;
+		heaps = position.getHeaps();
+		Arrays.sort(heaps);
+		seed = mix(((long) moves.hashCode() << 32 | moves.toString().hashCode() & 0xFFFFFFFFL)
+				^ (lastTakenLoses ? 0x5555555555555555L : 0));
+	}
+
+	private SearchBoard(SearchBoard b) {
+		moves = b.moves;
+		min = b.min;
+		lastTakenLoses = b.lastTakenLoses;
+		heaps = b.heaps.clone();
+		seed = b.seed;
+	}
+
+	/**
+	 * Returns a copy of the board for another thread
+	 */
+	SearchBoard copy() {
+		return new SearchBoard(this);
+	}
+
+	/**
+	 * Makes this board the same position as another board of the same game
+	 */
+	void copyFrom(SearchBoard b) {
+		System.arraycopy(b.heaps, 0, heaps, 0, heaps.length);
+	}
+
+	/**
+	 * Returns true if the player to move has a move
+	 */
+	boolean hasMove() {
+		return heaps[heaps.length - 1] >= min;
+	}
+
+	/**
+	 * Returns the value of a position without moves for the player to move: a win when the
+	 * last thing taken loses, otherwise a loss
+	 */
+	int terminalValue() {
+		return lastTakenLoses ? 1 : -1;
+	}
+
+	/**
+	 * Returns the key of the position
+	 */
+	long key() {
+		long h = seed;
+		for (int i = firstLive(); i < heaps.length; i++) {
+			h = mix(h ^ (heaps[i] + 0x9E3779B97F4A7C15L));
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the index of the smallest heap that can be moved from (heaps.length if none)
+	 */
+	int firstLive() {
+		int lo = 0, hi = heaps.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (heaps[mid] < min)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the number of moves that can be taken from a heap of the given size (the
+	 * first that many of the subtraction set)
+	 */
+	int countMoves(int heap) {
+		if (moves.isRange())
+			return Math.min(heap, moves.getMax());
+		int n = 0;
+		while (n < moves.size() && moves.get(n) <= heap) {
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns true if i is the last of the heaps of its size, which is the one moves are
+	 * made from
+	 */
+	boolean isCanonical(int i) {
+		return i == heaps.length - 1 || heaps[i] != heaps[i + 1];
+	}
+
+	/**
+	 * Returns true if taking the given number from heap i is a move of this position as
+	 * the search makes them
+	 */
+	boolean isMove(int i, int take) {
+		return i >= 0 && i < heaps.length && isCanonical(i) && take <= heaps[i] && moves.contains(take);
+	}
+
+	/**
+	 * Returns every move the search makes from this position, largest heap and largest take
+	 * first, each packed as (heap index << 32 | take)
+	 */
+	long[] listMoves() {
+		int count = 0;
+		for (int i = firstLive(); i < heaps.length; i++) {
+			if (isCanonical(i))
+				count += countMoves(heaps[i]);
+		}
+		long[] list = new long[count];
+		int n = 0;
+		for (int i = heaps.length - 1; i >= 0 && heaps[i] >= min; i--) {
+			if (!isCanonical(i))
+				continue;
+			for (int k = countMoves(heaps[i]) - 1; k >= 0; k--) {
+				list[n++] = pack(i, moves.get(k));
+			}
+		}
+		return list;
+	}
+
+	static long pack(int heap, int take) {
+		return (long) heap << 32 | take;
+	}
+
+	static int heapOf(long move) {
+		return (int) (move >>> 32);
+	}
+
+	static int takeOf(long move) {
+		return (int) move;
+	}
+
+	/**
+	 * Takes from heap i, keeping the heaps sorted
+	 * @return the index the heap ends up at, to pass to untake
+	 */
+	int take(int i, int take) {
+		int h = heaps[i] - take;
+		int j = i;
+		while (j > 0 && heaps[j - 1] > h) {
+			heaps[j] = heaps[j - 1];
+			j--;
+		}
+		heaps[j] = h;
+		return j;
+	}
+
+	/**
+	 * Undoes a take, given the index take returned
+	 */
+	void untake(int j, int take) {
+		int h = heaps[j] + take;
+		while (j < heaps.length - 1 && heaps[j + 1] < h) {
+			heaps[j] = heaps[j + 1];
+			j++;
+		}
+		heaps[j] = h;
+	}
+
+	/**
+	 * Returns the index in the given position of a heap the same size as heap i of the board
+	 */
+	int indexIn(Position position, int i) {
+		for (int k = 0; k < position.getHeapCount(); k++) {
+			if (position.getHeap(k) == heaps[i])
+				return k;
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * The finalizer of SplitMix64
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,91 @@
+package waldonsm.nimgame.ai;
+
+/**
+ * What one SearchAI search did: how many nodes it visited, how long it took and how far it
+ * got.  Immutable.
+ * @author Shawn Waldon
+ *
+ */
+public final class SearchStatistics {
+
+	private final SearchAI.Mode mode;
+	private final long nodes;
+	private final long nanos;
+	private final int depth;
+	private final long playouts;
+	private final boolean solved;
+
+	SearchStatistics(SearchAI.Mode mode, long nodes, long nanos, int depth, long playouts, boolean solved) {
+		this.mode = mode;
+		this.nodes = nodes;
+		this.nanos = nanos;
+		this.depth = depth;
+		this.playouts = playouts;
+		this.solved = solved;
+	}
+
+	/**
+	 * Returns the kind of search
+	 * @return the mode of the SearchAI
+	 */
+	public SearchAI.Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the number of positions visited, counting each ply of a playout as one
+	 * @return the number of nodes
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns how long the search took
+	 * @return the time in nanoseconds
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Returns the number of nodes visited per second of the search
+	 * @return the nodes per second
+	 */
+	public double getNodesPerSecond() {
+		return (nanos == 0) ? 0 : nodes * 1e9 / nanos;
+	}
+
+	/**
+	 * Returns the depth of the last alpha-beta iteration that finished
+	 * @return the depth in plies, 0 for a Monte Carlo search
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns the number of Monte Carlo playouts
+	 * @return the number of playouts, 0 for an alpha-beta search
+	 */
+	public long getPlayouts() {
+		return playouts;
+	}
+
+	/**
+	 * Returns true if the move found is proven to be the best (a win, or if there is none
+	 * the move that loses last)
+	 * @return true if the search solved the position
+	 */
+	public boolean isSolved() {
+		return solved;
+	}
+
+	@Override
+	public String toString() {
+		return mode + ": " + nodes + " nodes in " + (nanos / 1000000) + " ms ("
+				+ Math.round(getNodesPerSecond()) + " nodes/s)"
+				+ (mode == SearchAI.Mode.ALPHA_BETA ? ", depth " + depth : ", " + playouts + " playouts")
+				+ (solved ? ", solved" : "");
+	}
+}
@@ -0,0 +1,45 @@
+package waldonsm.nimgame.ai;
+
+import waldonsm.nimgame.game.HeapValues;
+import waldonsm.nimgame.game.SubtractionSet;
+import waldonsm.nimgame.tablebase.Tablebase;
+
+/**
+ * A GrundyAI that reads the heap values from a tablebase file (see TablebaseGenerator)
+ * instead of computing them, so it plays perfectly from the first move with no warm-up
+ * and almost no heap.  Subtraction sets the tablebase has no table for are computed as
+ * GrundyAI does.
+ * @author Shawn Waldon
+ *
+ */
+public class TablebaseAI extends GrundyAI {
+
+	private final Tablebase tablebase;
+
+	/**
+	 * Creates an AI answering from the given tablebase
+	 * @param tablebase an open tablebase
+	 */
+	public TablebaseAI(Tablebase tablebase) {
+		if (tablebase == null)
+			throw new NullPointerException();
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * Returns the tablebase's values for the set, or a new GrundyTable if it has none
+	 */
+	@Override
+	protected HeapValues createValues(SubtractionSet moves) {
+		HeapValues values = tablebase.get(moves);
+		return (values != null) ? values : super.createValues(moves);
+	}
+
+	/**
+	 * Returns the tablebase the AI answers from
+	 * @return the tablebase
+	 */
+	public Tablebase getTablebase() {
+		return tablebase;
+	}
+}
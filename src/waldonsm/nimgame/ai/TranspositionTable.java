@@ -0,0 +1,173 @@
+package waldonsm.nimgame.ai;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size hash table of searched positions shared by all the threads of a SearchAI.
+ * <P>
+ * Each entry is two longs in one AtomicLongArray: the position's 64 bit key XORed with the
+ * data, then the data itself.  Writers store both words without locking and readers only
+ * accept an entry whose two words XOR back to the key they are looking for, so an entry
+ * torn by two threads writing at once just looks like a miss.  Nothing is ever allocated
+ * after construction.
+ * <P>
+ * Entries come in buckets of two.  A position already in the bucket is updated in place
+ * (but a solved result is never replaced by a depth limited one); otherwise the entry from
+ * an older search, or failing that the shallower one, is replaced.  Solved results count
+ * as deeper than any search.
+ * @author Shawn Waldon
+ *
+ */
+public final class TranspositionTable {
+
+	/**
+	 * The bytes used by one entry
+	 */
+	public static final int ENTRY_BYTES = 16;
+	/**
+	 * The depth stored with a value that is known exactly (a proven win or loss)
+	 */
+	static final int DEPTH_SOLVED = 0xFFFF;
+	/**
+	 * The bounds a stored value can be
+	 */
+	static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+	/**
+	 * The largest move take that can be stored, and the largest heap index
+	 */
+	private static final int MAX_TAKE = (1 << 24) - 1, MAX_HEAP = 0xFF;
+	private static final long VALID = 1L << 63;
+
+	/**
+	 * Two longs per entry: key ^ data, then data.  Data is laid out as
+	 * take (bits 0-23), heap index (24-31), depth (32-47), value + 1 (48-49), bound (50-51),
+	 * age (52-59) and a valid bit (63).
+	 */
+	private final AtomicLongArray slots;
+	private final int mask;
+	private volatile int age;
+
+	/**
+	 * Creates a table using at most the given number of bytes (and at least two entries)
+	 * @param memoryBytes the memory budget of the table
+	 */
+	public TranspositionTable(long memoryBytes) {
+		long entries = Math.max(2, memoryBytes / ENTRY_BYTES);
+		// a power of two, and two longs each must fit in an AtomicLongArray
+		entries = Math.min(Long.highestOneBit(entries), 1 << 29);
+		slots = new AtomicLongArray((int) entries * 2);
+		mask = (int) entries - 1;
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 * @return the number of entries
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the memory used by the entries of the table
+	 * @return the size of the table in bytes
+	 */
+	public long getMemoryBytes() {
+		return (long) getCapacity() * ENTRY_BYTES;
+	}
+
+	/**
+	 * Starts a new search, so that entries from earlier ones are replaced first
+	 */
+	void nextAge() {
+		age = (age + 1) & 0xFF;
+	}
+
+	/**
+	 * Empties the table.  Only safe while no search is using it.
+	 */
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++) {
+			slots.set(i, 0);
+		}
+	}
+
+	/**
+	 * Looks up a position
+	 * @param key the key of the position
+	 * @return the entry's data, or 0 if the position is not in the table
+	 */
+	long probe(long key) {
+		int b = (int) key & mask & ~1;
+		for (int e = b; e <= b + 1; e++) {
+			long data = slots.get(2 * e + 1);
+			if (data != 0 && (slots.get(2 * e) ^ data) == key)
+				return data;
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores the result of searching a position
+	 * @param key the key of the position
+	 * @param depth the depth searched, or DEPTH_SOLVED if the value is exact
+	 * @param value the value for the player to move, -1, 0 or 1
+	 * @param bound EXACT, LOWER or UPPER
+	 * @param heap the index of the best move's heap, or -1 if there is no best move
+	 * @param take the number the best move takes
+	 */
+	void store(long key, int depth, int value, int bound, int heap, int take) {
+		if (heap < 0 || heap > MAX_HEAP || take > MAX_TAKE) {
+			heap = 0;
+			take = 0;
+		}
+		int a = age;
+		long data = VALID | take | ((long) heap << 24) | ((long) depth << 32)
+				| ((long) (value + 1) << 48) | ((long) bound << 50) | ((long) a << 52);
+		int b = (int) key & mask & ~1;
+		int victim = b;
+		int victimScore = Integer.MAX_VALUE;
+		for (int e = b; e <= b + 1; e++) {
+			long old = slots.get(2 * e + 1);
+			if (old != 0 && (slots.get(2 * e) ^ old) == key) {
+				if (depth(old) == DEPTH_SOLVED && depth != DEPTH_SOLVED)
+					return;
+				victim = e;
+				break;
+			}
+			// empty beats stale beats shallow
+			int score = (old == 0) ? -1 : (age(old) != a) ? depth(old) : DEPTH_SOLVED + 1 + depth(old);
+			if (score < victimScore) {
+				victim = e;
+				victimScore = score;
+			}
+		}
+		slots.set(2 * victim, key ^ data);
+		slots.set(2 * victim + 1, data);
+	}
+
+	static int depth(long data) {
+		return (int) (data >>> 32) & 0xFFFF;
+	}
+
+	static int value(long data) {
+		return (int) (data >>> 48 & 3) - 1;
+	}
+
+	static int bound(long data) {
+		return (int) (data >>> 50) & 3;
+	}
+
+	static int heap(long data) {
+		return (int) (data >>> 24) & 0xFF;
+	}
+
+	static int take(long data) {
+		return (int) data & MAX_TAKE;
+	}
+
+	private static int age(long data) {
+		return (int) (data >>> 52) & 0xFF;
+	}
+
+}
@@ -0,0 +1,111 @@
+package waldonsm.nimgame.ai;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One search of a SearchAI, run as a fork-join task.  Keeps what all the threads of the
+ * search share: the node count and limit, whether to stop, and the best move so far.
+ * @author Shawn Waldon
+ *
+ */
+abstract class TreeSearch extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The number of nodes a thread counts by itself before adding them to the shared count
+	 * and checking whether to stop
+	 */
+	static final int FLUSH_NODES = 1024;
+	/**
+	 * Returned by a search that was stopped before it finished
+	 */
+	static final int ABORTED = Integer.MIN_VALUE;
+
+	final TranspositionTable table;
+	final SearchBoard board;
+	private final long nodeLimit;
+	private final BestMoveHolder best;
+	private final AtomicLong nodes = new AtomicLong();
+	private volatile boolean stopped;
+	private volatile boolean solved;
+	/**
+	 * The best move so far as packed by SearchBoard.pack, 0 if none
+	 */
+	private volatile long bestMove;
+
+	TreeSearch(TranspositionTable table, SearchBoard board, long nodeLimit, BestMoveHolder best) {
+		this.table = table;
+		this.board = board;
+		this.nodeLimit = nodeLimit;
+		this.best = best;
+	}
+
+	/**
+	 * Adds to the number of nodes searched
+	 * @return true if the search should stop
+	 */
+	final boolean addNodes(int count) {
+		if (nodes.addAndGet(count) >= nodeLimit)
+			stopped = true;
+		return isStopped();
+	}
+
+	final long getNodes() {
+		return nodes.get();
+	}
+
+	/**
+	 * Returns true once the search has been stopped, by its node limit, by stop, or by the
+	 * BestMoveHolder
+	 */
+	final boolean isStopped() {
+		return stopped || best.isStopped();
+	}
+
+	final void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Records that the move offered last is proven to be the best
+	 */
+	final void solved() {
+		solved = true;
+	}
+
+	final boolean isSolved() {
+		return solved;
+	}
+
+	/**
+	 * Records a move of the root board as the best found so far
+	 */
+	final void offer(long move) {
+		bestMove = move;
+		best.offer(SearchBoard.takeOf(move));
+	}
+
+	/**
+	 * Returns the best move found, packed by SearchBoard.pack
+	 */
+	final long getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	 * Returns the depth of the last finished alpha-beta iteration, 0 if none
+	 */
+	int getDepth() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of Monte Carlo playouts, 0 if none
+	 */
+	long getPlayouts() {
+		return 0;
+	}
+
+}
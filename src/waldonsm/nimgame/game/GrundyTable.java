@@ -0,0 +1,211 @@
+package waldonsm.nimgame.game;
+
+/**
+ * The Grundy values of single heaps under a subtraction set, and whether a single heap is
+ * a win for the player to move when the last thing taken loses (the misere outcome).
+ * <P>
+ * For a range 1 to m both are known in closed form.  For any other (finite) set the values
+ * are computed incrementally, and since each depends only on the previous getMax() values,
+ * both sequences become periodic: once the last getMax() values repeat with some period the
+ * rest is known.  The tables look for a period each time they double, and after that every
+ * heap size, however large, is answered in constant time without growing the table.
+ * Thread safe.
+ * @author Shawn Waldon
+ *
+ */
+public class GrundyTable implements HeapValues {
+
+	private final SubtractionSet moves;
+	private final Sequence grundy;
+	private final Sequence misere;
+
+	/**
+	 * Creates the table for the given subtraction set
+	 * @param moves the numbers that may be taken from a heap in one move
+	 */
+	public GrundyTable(SubtractionSet moves) {
+		this.moves = moves;
+		if (moves.isRange()) {
+			grundy = misere = null;
+		} else {
+			grundy = new GrundySequence();
+			misere = new MisereSequence();
+		}
+	}
+
+	/**
+	 * Returns the subtraction set of this table
+	 * @return the subtraction set
+	 */
+	public SubtractionSet getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Returns the Grundy value of a single heap of the given size
+	 * @param heap the size of the heap
+	 * @return the Grundy value
+	 */
+	public int grundy(int heap) {
+		if (grundy == null)
+			return (int) (heap % ((long) moves.getMax() + 1));
+		return grundy.get(heap);
+	}
+
+	/**
+	 * Returns true if the player to move wins a single heap of the given size under misere
+	 * play: the player who takes the last thing loses, so a player left without a move wins
+	 * @param heap the size of the heap
+	 * @return true if the heap is a misere win for the player to move
+	 */
+	public boolean isMisereWin(int heap) {
+		if (misere == null)
+			return heap % ((long) moves.getMax() + 1) != 1;
+		return misere.get(heap) != 0;
+	}
+
+	/**
+	 * Returns the index the Grundy values are periodic from, or -1 if no period has been
+	 * found yet (0 for a range, which is periodic from the start)
+	 * @return the length of the pre-period
+	 */
+	public int getPreperiod() {
+		if (grundy == null)
+			return 0;
+		Period p = grundy.period;
+		return (p == null) ? -1 : p.start;
+	}
+
+	/**
+	 * Returns the period of the Grundy values, or -1 if none has been found yet
+	 * @return the period of the Grundy values
+	 */
+	public int getPeriod() {
+		if (grundy == null)
+			return (int) Math.min(Integer.MAX_VALUE, (long) moves.getMax() + 1);
+		Period p = grundy.period;
+		return (p == null) ? -1 : p.length;
+	}
+
+	/**
+	 * A sequence, eventually periodic, from the start of its period on
+	 */
+	private static final class Period {
+		final int[] values;
+		final int start, length;
+
+		Period(int[] values, int start, int length) {
+			this.values = values;
+			this.start = start;
+			this.length = length;
+		}
+
+		int get(int n) {
+			if (n < values.length)
+				return values[n];
+			return values[start + (n - start) % length];
+		}
+	}
+
+	/**
+	 * A sequence where each value depends on the previous getMax() values.  Computed lazily
+	 * under its own lock until it is found to be periodic, then read without locking.
+	 */
+	private abstract class Sequence {
+		private volatile Period period;
+		// Guarded by "this"
+		private int[] values = new int[64];
+		private int size;
+		private int nextCheck = Math.max(64, 4 * moves.getMax());
+
+		final int get(int n) {
+			if (n < 0)
+				throw new IllegalArgumentException("negative heap: " + n);
+			Period p = period;
+			if (p != null)
+				return p.get(n);
+			synchronized (this) {
+				while (period == null && size <= n) {
+					if (size == values.length) {
+						int[] bigger = new int[(int) Math.min(Integer.MAX_VALUE - 8, 2L * size)];
+						System.arraycopy(values, 0, bigger, 0, size);
+						values = bigger;
+					}
+					values[size] = compute(values, size);
+					size++;
+					if (size == nextCheck) {
+						period = findPeriod();
+						nextCheck = (int) Math.min(Integer.MAX_VALUE, 2L * nextCheck);
+					}
+				}
+				return (period != null) ? period.get(n) : values[n];
+			}
+		}
+
+		/**
+		 * Looks for the smallest period q such that the values repeat with period q for at
+		 * least getMax() values in a row at the end of the table, which proves the rest of
+		 * the sequence repeats too.  Must be called holding the lock.
+		 */
+		private Period findPeriod() {
+			int k = moves.getMax();
+			for (int q = 1; q + k <= size; q++) {
+				int i = size - q - 1;
+				while (i >= 0 && values[i] == values[i + q]) {
+					i--;
+				}
+				int start = i + 1;
+				if (size - q - start >= k) {
+					int[] prefix = new int[start + q];
+					System.arraycopy(values, 0, prefix, 0, prefix.length);
+					values = null;
+					return new Period(prefix, start, q);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Computes value n from the values before it
+		 */
+		abstract int compute(int[] values, int n);
+	}
+
+	/**
+	 * The Grundy values: the smallest value not among those of the positions one move away
+	 */
+	private class GrundySequence extends Sequence {
+		// Guarded by "this", there are at most size() successors so the mex is at most size()
+		private final boolean[] seen = new boolean[moves.size() + 1];
+
+		@Override
+		int compute(int[] values, int n) {
+			for (int i = 0; i < moves.size() && moves.get(i) <= n; i++) {
+				seen[values[n - moves.get(i)]] = true;
+			}
+			int mex = 0;
+			while (seen[mex]) {
+				mex++;
+			}
+			for (int i = 0; i < moves.size() && moves.get(i) <= n; i++) {
+				seen[values[n - moves.get(i)]] = false;
+			}
+			return mex;
+		}
+	}
+
+	/**
+	 * The misere outcomes: 1 if the player to move wins, which is when they cannot move or
+	 * can move to a heap that is a loss
+	 */
+	private class MisereSequence extends Sequence {
+		@Override
+		int compute(int[] values, int n) {
+			for (int i = 0; i < moves.size() && moves.get(i) <= n; i++) {
+				if (values[n - moves.get(i)] == 0)
+					return 1;
+			}
+			return (moves.getMin() <= n) ? 0 : 1;
+		}
+	}
+}
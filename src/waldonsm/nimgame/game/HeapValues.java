@@ -0,0 +1,32 @@
+package waldonsm.nimgame.game;
+
+/**
+ * The values of single heaps under a subtraction set, which are all SubtractionGame needs
+ * to evaluate positions with any number of heaps.  Computed by a GrundyTable, or read from
+ * a tablebase file.  Implementations must be thread safe.
+ * @author Shawn Waldon
+ *
+ */
+public interface HeapValues {
+
+	/**
+	 * Returns the subtraction set the values are for
+	 * @return the subtraction set
+	 */
+	SubtractionSet getMoves();
+
+	/**
+	 * Returns the Grundy value of a single heap of the given size
+	 * @param heap the size of the heap
+	 * @return the Grundy value
+	 */
+	int grundy(int heap);
+
+	/**
+	 * Returns true if the player to move wins a single heap of the given size under misere
+	 * play: the player who takes the last thing loses, so a player left without a move wins
+	 * @param heap the size of the heap
+	 * @return true if the heap is a misere win for the player to move
+	 */
+	boolean isMisereWin(int heap);
+}
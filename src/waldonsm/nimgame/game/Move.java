@@ -0,0 +1,56 @@
+package waldonsm.nimgame.game;
+
+/**
+ * A move: taking some number of things from one heap.  Immutable.
+ * @author Shawn Waldon
+ *
+ */
+public final class Move {
+
+	private final int heap;
+	private final int take;
+
+	/**
+	 * Creates a move
+	 * @param heap the index of the heap to take from
+	 * @param take the number of things to take
+	 */
+	public Move(int heap, int take) {
+		this.heap = heap;
+		this.take = take;
+	}
+
+	/**
+	 * Returns the index of the heap taken from
+	 * @return the index of the heap taken from
+	 */
+	public int getHeap() {
+		return heap;
+	}
+
+	/**
+	 * Returns the number of things taken
+	 * @return the number of things taken
+	 */
+	public int getTake() {
+		return take;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Move))
+			return false;
+		Move m = (Move) o;
+		return heap == m.heap && take == m.take;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * heap + take;
+	}
+
+	@Override
+	public String toString() {
+		return "take " + take + " from heap " + heap;
+	}
+}
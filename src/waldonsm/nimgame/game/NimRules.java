@@ -0,0 +1,24 @@
+package waldonsm.nimgame.game;
+
+/**
+ * The rules of the single pile game played in the GUI.
+ * @author Shawn Waldon
+ *
+ */
+public final class NimRules {
+
+	private NimRules() {
+	}
+
+	/**
+	 * Returns true if taking the given number of things is legal: between (inclusive) 1
+	 * and the minimum of maxNumTakable and numLeft.
+	 * @param take the number of things taken
+	 * @param numLeft the number of things left in the pile
+	 * @param maxNumTakable the maximum number of things that can be taken in one turn
+	 * @return true if the take is legal
+	 */
+	public static boolean isLegalTake(int take, int numLeft, int maxNumTakable) {
+		return take > 0 && take <= numLeft && take <= maxNumTakable;
+	}
+}
@@ -0,0 +1,160 @@
+package waldonsm.nimgame.game;
+
+/**
+ * Keeps track of which pieces of a pile have been taken.  The pieces left are kept as a
+ * bit set, with a Fenwick tree over the number left in each 64 bit word, so that taking a
+ * piece and finding the k-th piece left both take O(log n) time and the count takes O(1),
+ * with no boxing or copying however large the pile.  Not thread safe.
+ * @author Shawn Waldon
+ *
+ */
+public class PieceIndex {
+
+	private final int size;
+	/**
+	 * Bit i set while piece i has not been taken
+	 */
+	private final long[] left;
+	/**
+	 * Fenwick tree (1-based) over the bit count of each word of left
+	 */
+	private final int[] tree;
+	private int numLeft;
+
+	/**
+	 * Creates the index for a pile of the given size with nothing taken
+	 * @param size the number of pieces in the pile
+	 */
+	public PieceIndex(int size) {
+		if (size < 0)
+			throw new IllegalArgumentException("negative size: " + size);
+		this.size = size;
+		int words = (size + 63) >>> 6;
+		left = new long[words];
+		tree = new int[words + 1];
+		for (int w = 0; w < words; w++) {
+			int bits = Math.min(64, size - (w << 6));
+			left[w] = (bits == 64) ? -1L : (1L << bits) - 1;
+			// linear time Fenwick construction: push each node into its parent
+			tree[w + 1] += bits;
+			int parent = (w + 1) + ((w + 1) & -(w + 1));
+			if (parent <= words)
+				tree[parent] += tree[w + 1];
+		}
+		numLeft = size;
+	}
+
+	/**
+	 * Returns the number of pieces in the pile, taken or not
+	 * @return the number of pieces in the pile
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of pieces not yet taken
+	 * @return the number of pieces left
+	 */
+	public int getNumLeft() {
+		return numLeft;
+	}
+
+	/**
+	 * Returns true if the given piece has been taken
+	 * @param i the index of the piece
+	 * @return true if the piece has been taken
+	 */
+	public boolean isTaken(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException(Integer.toString(i));
+		return (left[i >>> 6] & (1L << i)) == 0;
+	}
+
+	/**
+	 * Takes the given piece
+	 * @param i the index of the piece
+	 * @return true if the piece was taken, false if it already had been
+	 */
+	public boolean take(int i) {
+		if (isTaken(i))
+			return false;
+		int w = i >>> 6;
+		left[w] &= ~(1L << i);
+		for (int node = w + 1; node < tree.length; node += node & -node) {
+			tree[node]--;
+		}
+		numLeft--;
+		return true;
+	}
+
+	/**
+	 * Returns the index of the k-th piece left (counting from 0) in pile order
+	 * @param k the rank of the piece among those left, from 0 to getNumLeft()-1
+	 * @return the index of the piece
+	 */
+	public int select(int k) {
+		if (k < 0 || k >= numLeft)
+			throw new IndexOutOfBoundsException(Integer.toString(k));
+		// descend the tree to the word holding the piece
+		int node = 0;
+		for (int step = Integer.highestOneBit(tree.length - 1); step != 0; step >>>= 1) {
+			int next = node + step;
+			if (next < tree.length && tree[next] <= k) {
+				node = next;
+				k -= tree[next];
+			}
+		}
+		long bits = left[node];
+		for (int j = 0; j < k; j++) {
+			bits &= bits - 1;
+		}
+		return (node << 6) + Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * Returns the number of pieces left before the given index
+	 * @param i the index, from 0 to size()
+	 * @return the number of pieces left with a smaller index
+	 */
+	public int rank(int i) {
+		if (i < 0 || i > size)
+			throw new IndexOutOfBoundsException(Integer.toString(i));
+		int w = i >>> 6;
+		int count = 0;
+		for (int node = w; node > 0; node -= node & -node) {
+			count += tree[node];
+		}
+		if ((i & 63) != 0)
+			count += Long.bitCount(left[w] & ((1L << i) - 1));
+		return count;
+	}
+
+	/**
+	 * Returns the number of pieces left from (inclusive) to to (exclusive)
+	 * @param from the first index
+	 * @param to one past the last index
+	 * @return the number of pieces left in the range
+	 */
+	public int countLeft(int from, int to) {
+		return rank(to) - rank(from);
+	}
+
+	/**
+	 * Returns the index of the first piece left at or after the given index
+	 * @param from the index to start at
+	 * @return the index of the piece, or -1 if there is none
+	 */
+	public int nextLeft(int from) {
+		if (from >= size)
+			return -1;
+		int w = Math.max(0, from) >>> 6;
+		long bits = left[w] & (-1L << Math.max(0, from));
+		while (bits == 0) {
+			if (++w == left.length)
+				return -1;
+			bits = left[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(bits);
+	}
+}
@@ -0,0 +1,129 @@
+package waldonsm.nimgame.game;
+
+import java.util.Arrays;
+
+/**
+ * A position in a (possibly multi-heap) subtraction game: the size of every heap together
+ * with the moves allowed on them.  Immutable.
+ * @author Shawn Waldon
+ *
+ */
+public final class Position {
+
+	private final SubtractionSet moves;
+	private final int[] heaps;
+
+	/**
+	 * Creates a position
+	 * @param moves the numbers that may be taken from a heap in one move
+	 * @param heaps the size of each heap, none negative
+	 */
+	public Position(SubtractionSet moves, int... heaps) {
+		if (heaps.length == 0)
+			throw new IllegalArgumentException("no heaps");
+		for (int h: heaps) {
+			if (h < 0)
+				throw new IllegalArgumentException("negative heap: " + h);
+		}
+		this.moves = moves;
+		this.heaps = heaps.clone();
+	}
+
+	/**
+	 * Returns the numbers that may be taken from a heap in one move
+	 * @return the subtraction set
+	 */
+	public SubtractionSet getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Returns the number of heaps
+	 * @return the number of heaps
+	 */
+	public int getHeapCount() {
+		return heaps.length;
+	}
+
+	/**
+	 * Returns the size of the given heap
+	 * @param i the index of the heap
+	 * @return the number of things in the heap
+	 */
+	public int getHeap(int i) {
+		return heaps[i];
+	}
+
+	/**
+	 * Returns a copy of the heap sizes
+	 * @return a copy of the heap sizes
+	 */
+	public int[] getHeaps() {
+		return heaps.clone();
+	}
+
+	/**
+	 * Returns the total number of things left in all the heaps
+	 * @return the total number of things left
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (int h: heaps) {
+			total += h;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns true if there is any legal move from this position
+	 * @return true if the player to move can move
+	 */
+	public boolean hasMove() {
+		for (int h: heaps) {
+			if (h >= moves.getMin())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the given move is legal in this position
+	 * @param move the move
+	 * @return true if the move is legal
+	 */
+	public boolean isLegal(Move move) {
+		return move != null && move.getHeap() >= 0 && move.getHeap() < heaps.length
+				&& moves.contains(move.getTake()) && move.getTake() <= heaps[move.getHeap()];
+	}
+
+	/**
+	 * Returns the position after the given move
+	 * @param move a legal move
+	 * @return the new position
+	 */
+	public Position apply(Move move) {
+		if (!isLegal(move))
+			throw new IllegalArgumentException("Illegal move: " + move);
+		int[] next = heaps.clone();
+		next[move.getHeap()] -= move.getTake();
+		return new Position(moves, next);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Position))
+			return false;
+		Position p = (Position) o;
+		return moves.equals(p.moves) && Arrays.equals(heaps, p.heaps);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * moves.hashCode() + Arrays.hashCode(heaps);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(heaps) + " taking " + moves;
+	}
+}
@@ -0,0 +1,169 @@
+package waldonsm.nimgame.game;
+
+/**
+ * Evaluates positions of a multi-heap subtraction game and finds winning moves.
+ * <P>
+ * When the last thing taken wins, a position is a win for the player to move exactly when
+ * the Grundy values of its heaps XOR to non-zero (the Sprague-Grundy theorem).  When the
+ * last thing taken loses, a single heap is looked up in the misere table, and several
+ * heaps are evaluated with the rule for misere Nim on their Grundy values: play as in the
+ * normal game unless every heap has Grundy value 0 or 1, when an odd number of 1s is a
+ * loss.  This is exact for ranges 1 to m (including Nim), but only an approximation for
+ * sets whose misere play is not "tame".
+ * <P>
+ * Once the GrundyTable has found its period (or with the values read from a tablebase)
+ * evaluating a position takes time proportional to the number of heaps, whatever their
+ * sizes.
+ * @author Shawn Waldon
+ *
+ */
+public class SubtractionGame {
+
+	private final HeapValues table;
+	private final boolean lastTakenLoses;
+
+	/**
+	 * Creates a game with the given rules
+	 * @param moves the numbers that may be taken from a heap in one move
+	 * @param lastTakenLoses true if the player who takes the last thing loses
+	 */
+	public SubtractionGame(SubtractionSet moves, boolean lastTakenLoses) {
+		this(new GrundyTable(moves), lastTakenLoses);
+	}
+
+	/**
+	 * Creates a game sharing an existing table
+	 * @param table the heap values for the game's subtraction set
+	 * @param lastTakenLoses true if the player who takes the last thing loses
+	 */
+	public SubtractionGame(HeapValues table, boolean lastTakenLoses) {
+		this.table = table;
+		this.lastTakenLoses = lastTakenLoses;
+	}
+
+	/**
+	 * Returns the table of Grundy values used by this game
+	 * @return the table
+	 */
+	public HeapValues getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns true if the player who takes the last thing loses
+	 * @return true if the player who takes the last thing loses
+	 */
+	public boolean isLastTakenLoses() {
+		return lastTakenLoses;
+	}
+
+	/**
+	 * Returns the Grundy value of the position, the XOR of the values of its heaps
+	 * @param position the position
+	 * @return the Grundy value
+	 */
+	public int grundy(Position position) {
+		check(position);
+		int x = 0;
+		for (int i = 0; i < position.getHeapCount(); i++) {
+			x ^= table.grundy(position.getHeap(i));
+		}
+		return x;
+	}
+
+	/**
+	 * Returns true if the player to move in the given position can force a win
+	 * @param position the position
+	 * @return true if the position is a win for the player to move
+	 */
+	public boolean isWin(Position position) {
+		check(position);
+		return isWin(position, -1, 0);
+	}
+
+	/**
+	 * Returns a winning move from the given position, or if there is none the smallest
+	 * move from the first heap that has one.
+	 * @param position the position
+	 * @return the move, or null if there is no legal move
+	 */
+	public Move bestMove(Position position) {
+		check(position);
+		SubtractionSet moves = table.getMoves();
+		int x = 0;
+		for (int i = 0; i < position.getHeapCount(); i++) {
+			x ^= table.grundy(position.getHeap(i));
+		}
+		for (int i = 0; i < position.getHeapCount(); i++) {
+			int h = position.getHeap(i);
+			if (moves.isRange()) {
+				// only the Grundy value of the heap matters, and a winning move has to
+				// leave it at 0, 1 or the value that makes the XOR 0
+				int[] targets = {table.grundy(h) ^ x, 0, 1};
+				for (int target: targets) {
+					int take = takeTo(h, target);
+					if (take > 0 && !isWin(position, i, h - take))
+						return new Move(i, take);
+				}
+			} else {
+				for (int j = 0; j < moves.size() && moves.get(j) <= h; j++) {
+					if (!isWin(position, i, h - moves.get(j)))
+						return new Move(i, moves.get(j));
+				}
+			}
+		}
+		for (int i = 0; i < position.getHeapCount(); i++) {
+			if (position.getHeap(i) >= moves.getMin())
+				return new Move(i, moves.getMin());
+		}
+		return null;
+	}
+
+	/**
+	 * For a range 1 to m, returns the smallest take leaving the heap with the given Grundy
+	 * value, or -1 if there is none
+	 */
+	private int takeTo(int heap, int target) {
+		long period = (long) table.getMoves().getMax() + 1;
+		if (target >= period || target > heap)
+			return -1;
+		long take = ((heap - target) % period + period) % period;
+		return (take == 0) ? -1 : (int) take;
+	}
+
+	/**
+	 * Evaluates the position with heap i replaced by the given size (no heap replaced if
+	 * i is negative).
+	 */
+	private boolean isWin(Position position, int replaced, int replacement) {
+		int min = table.getMoves().getMin();
+		int x = 0, live = 0, lastLive = 0;
+		boolean allSmall = true;
+		int ones = 0;
+		for (int i = 0; i < position.getHeapCount(); i++) {
+			int h = (i == replaced) ? replacement : position.getHeap(i);
+			int g = table.grundy(h);
+			x ^= g;
+			if (h >= min) {
+				live++;
+				lastLive = h;
+			}
+			if (g > 1)
+				allSmall = false;
+			else if (g == 1)
+				ones++;
+		}
+		if (!lastTakenLoses)
+			return x != 0;
+		if (live <= 1)
+			return table.isMisereWin(lastLive);
+		if (allSmall)
+			return ones % 2 == 0;
+		return x != 0;
+	}
+
+	private void check(Position position) {
+		if (!position.getMoves().equals(table.getMoves()))
+			throw new IllegalArgumentException("Position " + position + " is not for " + table.getMoves());
+	}
+}
@@ -0,0 +1,131 @@
+package waldonsm.nimgame.game;
+
+import java.util.Arrays;
+
+/**
+ * The set of numbers that may be taken from a heap in one move.  Either the range 1 to
+ * some maximum (the rules of the GUI game, and with no maximum, ordinary Nim) or an
+ * arbitrary finite set of positive numbers.  Immutable.
+ * @author Shawn Waldon
+ *
+ */
+public final class SubtractionSet {
+
+	/**
+	 * The sorted moves, or null for the range 1 to max
+	 */
+	private final int[] moves;
+	private final int max;
+
+	private SubtractionSet(int[] moves, int max) {
+		this.moves = moves;
+		this.max = max;
+	}
+
+	/**
+	 * Returns the set of moves 1 to max
+	 * @param max the maximum number that can be taken in one move
+	 * @return the subtraction set
+	 */
+	public static SubtractionSet upTo(int max) {
+		if (max <= 0)
+			throw new IllegalArgumentException("max must be positive: " + max);
+		return new SubtractionSet(null, max);
+	}
+
+	/**
+	 * Returns the set of the given moves
+	 * @param moves the numbers that can be taken in one move, all positive
+	 * @return the subtraction set
+	 */
+	public static SubtractionSet of(int... moves) {
+		if (moves.length == 0)
+			throw new IllegalArgumentException("no moves");
+		int[] sorted = moves.clone();
+		Arrays.sort(sorted);
+		if (sorted[0] <= 0)
+			throw new IllegalArgumentException("moves must be positive: " + sorted[0]);
+		int n = 1;
+		for (int i = 1; i < sorted.length; i++) {
+			if (sorted[i] != sorted[n-1])
+				sorted[n++] = sorted[i];
+		}
+		int max = sorted[n-1];
+		// a set with no gaps is just a range
+		if (n == max)
+			return new SubtractionSet(null, max);
+		return new SubtractionSet(Arrays.copyOf(sorted, n), max);
+	}
+
+	/**
+	 * Returns true if this is the range 1 to getMax()
+	 * @return true if this is the range 1 to getMax()
+	 */
+	public boolean isRange() {
+		return moves == null;
+	}
+
+	/**
+	 * Returns the number of moves in the set
+	 * @return the number of moves in the set
+	 */
+	public int size() {
+		return (moves == null) ? max : moves.length;
+	}
+
+	/**
+	 * Returns the i-th smallest move
+	 * @param i the index of the move, from 0 to size()-1
+	 * @return the move
+	 */
+	public int get(int i) {
+		if (i < 0 || i >= size())
+			throw new IndexOutOfBoundsException(Integer.toString(i));
+		return (moves == null) ? i + 1 : moves[i];
+	}
+
+	/**
+	 * Returns the smallest move
+	 * @return the smallest move
+	 */
+	public int getMin() {
+		return (moves == null) ? 1 : moves[0];
+	}
+
+	/**
+	 * Returns the largest move
+	 * @return the largest move
+	 */
+	public int getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns true if the given number may be taken in one move
+	 * @param take the number taken
+	 * @return true if take is in the set
+	 */
+	public boolean contains(int take) {
+		if (moves == null)
+			return take >= 1 && take <= max;
+		return Arrays.binarySearch(moves, take) >= 0;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof SubtractionSet))
+			return false;
+		SubtractionSet s = (SubtractionSet) o;
+		return max == s.max && Arrays.equals(moves, s.moves);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * max + Arrays.hashCode(moves);
+	}
+
+	@Override
+	public String toString() {
+		return (moves == null) ? "{1.." + max + "}" : Arrays.toString(moves).replace('[', '{').replace(']', '}');
+	}
+}
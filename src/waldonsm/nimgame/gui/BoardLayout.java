@@ -0,0 +1,112 @@
+package waldonsm.nimgame.gui;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+
+/**
+ * Where the cells of the pile are on the NimGamePanel at a given zoom.  The board is
+ * BOARD_WIDTH pixels wide and the cells fill rows from the bottom of the panel up, so the
+ * y positions depend on the height of the panel.  Immutable.
+ * @author Shawn Waldon
+ *
+ */
+final class BoardLayout {
+
+	static final int BOARD_WIDTH = 500;
+
+	private final BoardZoom zoom;
+	private final int numThings;
+	private final int cellSize;
+	private final int columns;
+	private final int cells;
+	private final int rows;
+
+	BoardLayout(BoardZoom zoom, int numThings) {
+		this.zoom = zoom;
+		this.numThings = numThings;
+		cellSize = zoom.getCellSize();
+		columns = BOARD_WIDTH / cellSize;
+		cells = (int) (((long) numThings + zoom.getThingsPerCell() - 1) / zoom.getThingsPerCell());
+		rows = (cells + columns - 1) / columns;
+	}
+
+	BoardZoom getZoom() {
+		return zoom;
+	}
+
+	int getCellSize() {
+		return cellSize;
+	}
+
+	int getCellCount() {
+		return cells;
+	}
+
+	/**
+	 * Returns the preferred size of the panel, at least 500 by 500
+	 */
+	Dimension getPreferredSize() {
+		return new Dimension(BOARD_WIDTH, (int) Math.min(Integer.MAX_VALUE, Math.max(500L, (long) rows * cellSize)));
+	}
+
+	/**
+	 * Returns the cell the given thing is drawn in
+	 */
+	int cellOf(int thing) {
+		return thing / zoom.getThingsPerCell();
+	}
+
+	/**
+	 * Returns the first thing in the given cell
+	 */
+	int firstThing(int cell) {
+		return cell * zoom.getThingsPerCell();
+	}
+
+	/**
+	 * Returns one past the last thing in the given cell
+	 */
+	int endThing(int cell) {
+		return (int) Math.min(numThings, ((long) cell + 1) * zoom.getThingsPerCell());
+	}
+
+	int cellX(int cell) {
+		return cell % columns * cellSize;
+	}
+
+	int cellY(int cell, int height) {
+		return height - (cell / columns + 1) * cellSize;
+	}
+
+	/**
+	 * Returns the cell at the given point, or -1 if there is none
+	 */
+	int cellAt(int x, int y, int height) {
+		if (x < 0 || x >= columns * cellSize || y >= height)
+			return -1;
+		int row = Math.floorDiv(height - 1 - y, cellSize);
+		int cell = row * columns + x / cellSize;
+		return (row < 0 || cell >= cells) ? -1 : cell;
+	}
+
+	/**
+	 * Stores the range of cells overlapping the given area into range, as (first column,
+	 * first row, columns, rows).  The width or height is 0 if there are none.
+	 */
+	Rectangle cellRange(Rectangle area, int height, Rectangle range) {
+		int firstRow = Math.max(0, Math.floorDiv(height - area.y - area.height, cellSize));
+		int lastRow = Math.min(rows - 1, Math.floorDiv(height - area.y - 1, cellSize));
+		int firstCol = Math.max(0, Math.floorDiv(area.x, cellSize));
+		int lastCol = Math.min(columns - 1, Math.floorDiv(area.x + area.width - 1, cellSize));
+		range.setBounds(firstCol, firstRow, Math.max(0, lastCol - firstCol + 1), Math.max(0, lastRow - firstRow + 1));
+		return range;
+	}
+
+	/**
+	 * Returns the cell in the given column and row, or -1 if that is past the last cell
+	 */
+	int cellAt(int column, int row) {
+		int cell = row * columns + column;
+		return (cell < cells) ? cell : -1;
+	}
+}
@@ -0,0 +1,47 @@
+package waldonsm.nimgame.gui;
+
+/**
+ * The levels of detail the NimGamePanel can draw the pile at.  At the closer levels every
+ * thing has its own cell with its image, at the further ones each cell stands for a block
+ * of things and shows how many of them are left.
+ * @author Shawn Waldon
+ *
+ */
+public enum BoardZoom {
+
+	SPRITES("Things", 50, 1),
+	SMALL_SPRITES("Small things", 10, 1),
+	BLOCKS("Blocks of 100", 50, 100),
+	LARGE_BLOCKS("Blocks of 10000", 50, 10000);
+
+	private final String label;
+	private final int cellSize;
+	private final int thingsPerCell;
+
+	private BoardZoom(String label, int cellSize, int thingsPerCell) {
+		this.label = label;
+		this.cellSize = cellSize;
+		this.thingsPerCell = thingsPerCell;
+	}
+
+	/**
+	 * Returns the size of the (square) cells in pixels
+	 * @return the size of the cells in pixels
+	 */
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Returns the number of things each cell stands for
+	 * @return the number of things per cell
+	 */
+	public int getThingsPerCell() {
+		return thingsPerCell;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+}
@@ -1,55 +1,154 @@
 package waldonsm.nimgame.gui;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
-import javax.imageio.ImageIO;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import waldonsm.nimgame.ai.AsyncNimGameAI;
 import waldonsm.nimgame.ai.NimGameAI;
-import waldonsm.nimgame.gui.animation.Animatable;
+import waldonsm.nimgame.game.PieceIndex;
 import waldonsm.nimgame.gui.animation.AnimationDoneListener;
 import waldonsm.nimgame.gui.animation.AnimationRunner;
+import waldonsm.nimgame.gui.animation.AnimationScope;
+import waldonsm.nimgame.gui.animation.EffectRenderer;
 import waldonsm.nimgame.gui.animation.Explosion;
+import waldonsm.nimgame.metrics.HistogramSnapshot;
+import waldonsm.nimgame.metrics.NimGameMetrics;
+import waldonsm.nimgame.record.GameJournal;
+import waldonsm.nimgame.record.GameRecord;
 
 /**
  * This class is the main part of the NimGame GUI.  This panel is where the drawing gets done,
- * as well as containing the model for the game (a boolean array).  The only pieces the GUI
+ * as well as containing the model for the game (a PieceIndex).  The only pieces the GUI
  * requires other than this panel, is some way for the user to say they are done before they
  * have taken their max number of pieces, and a way to create a new game, both implemented by
  * calling methods on this panel.  
+ * <P>
+ * The panel is meant to go in a JScrollPane: only the visible part of the pile is drawn,
+ * and at the further zoom levels (see BoardZoom) a cell stands for a block of things, so
+ * very large piles stay responsive.
+ * <P>
+ * Games can be recorded to a GameJournal as they are played, and a recorded game can be
+ * played back on the panel at any speed with replay.
  * @author Shawn Waldon
  *
  */
-public class NimGamePanel extends JPanel {
+public class NimGamePanel extends JPanel implements Scrollable {
 
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 	
-	private static final String IMAGE_FILENAME= "bomb.png";
+	private static final Color BLOCK_COLOR = new Color(255, 140, 0);
+	/**
+	 * The pause between the player's turn and the AI's, in milliseconds
+	 */
+	private static final int AI_PAUSE = 500;
+	/**
+	 * Hands the AI's moves to the EDT
+	 */
+	private static final Executor EDT = new Executor() {
+		public void execute(Runnable r) {
+			SwingUtilities.invokeLater(r);
+		}
+	};
 	
-	private BufferedImage image;
+	/**
+	 * The bomb at the cell size of the current zoom, from the SpriteCache for the screen
+	 * spriteConfig, or null to get it again
+	 */
+	private BufferedImage sprite;
+	private GraphicsConfiguration spriteConfig;
+	private BoardLayout layout;
 	private AnimationDoneListener playerDone;
 	private AnimationDoneListener aiDone;
 	
-	private NimGameAI aiBot;
-	private int numLeft, maxNumTakable;
+	private AsyncNimGameAI aiBot;
+	/**
+	 * How long the AI may think before it has to move, in milliseconds
+	 */
+	private long aiBudget = 2000;
+	/**
+	 * The AI's move being chosen, null if none
+	 */
+	private AsyncNimGameAI.Request aiRequest;
+	/**
+	 * True from when the AI is asked to move until its explosions are done
+	 */
+	private boolean aiTurn;
+	/**
+	 * Counts the games, so that an AI move chosen for an earlier game is ignored
+	 */
+	private int game;
+	private int maxNumTakable;
 	private boolean lastTakenLoses;
-	private boolean[] isTaken;
+	private PieceIndex pieces;
 	private int numTakenThisTurn = 0;
 	private boolean playerTurn;
+	private boolean playerGoesFirst;
+	/**
+	 * Where the games are recorded, null if they are not
+	 */
+	private GameJournal journal;
+	/**
+	 * True if the game going on was started in the journal by this panel, so its takes are
+	 * recorded (a game joined part way through is not)
+	 */
+	private boolean recording;
+	/**
+	 * Plays the takes of a recorded game, null unless one is being replayed
+	 */
+	private Timer replayTimer;
+	/**
+	 * The visible part of the pile drawn once, so each frame is a single blit.  It covers
+	 * layerBounds of the panel when the panel was layerHeight high, is rebuilt when null or
+	 * when the panel is scrolled or resized, and cells are redrawn in it as things are taken.
+	 */
+	private BufferedImage boardLayer;
+	private final Rectangle layerBounds = new Rectangle();
+	private int layerHeight;
+	/**
+	 * Repaints the metrics overlay twice a second while it is shown, null when it is not
+	 */
+	private Timer overlayTimer;
+	private final Rectangle overlayBounds = new Rectangle();
+	/**
+	 * The panel's own animations, run by the shared AnimationRunner while the panel is
+	 * registered (from construction, and again whenever it is added to the UI, until it is
+	 * removed)
+	 */
+	private final AnimationScope animations = new AnimationScope(this);
+	/**
+	 * Draws all the explosions in a paint with one blit
+	 */
+	private final EffectRenderer effects = new EffectRenderer();
+	/**
+	 * Scratch rectangles (only used on the EDT)
+	 */
+	private final Rectangle visible = new Rectangle(),
+		cellRange = new Rectangle(), cellBounds = new Rectangle();
 
 	/**
 	 * Creates a new NimGamePanel with the given parameters.  Most of these can be changed with
@@ -61,27 +160,25 @@ public class NimGamePanel extends JPanel {
 	 * @param playerGoesFirst true if the player should have his/her turn first, false if the AI goes first.
 	 */
 	public NimGamePanel(int numThings, int maxNumTakable, boolean lastTakenLoses, NimGameAI bot, boolean playerGoesFirst) {
-		aiBot = bot;
-		numLeft = numThings;
-		isTaken = new boolean[numThings];
+		aiBot = new AsyncNimGameAI(bot);
+		pieces = new PieceIndex(numThings);
+		layout = new BoardLayout(BoardZoom.SPRITES, numThings);
 		this.maxNumTakable = maxNumTakable;
 		this.lastTakenLoses = lastTakenLoses;
 		playerTurn = playerGoesFirst;
+		this.playerGoesFirst = playerGoesFirst;
 		playerDone = new PlayerAnimationDoneListener();
 		aiDone = new AIAnimationDoneListener();
-		Dimension dim = new Dimension(500,(numThings/10.0 > 10.0)?(numThings/10+1)*50:500);
+		Dimension dim = layout.getPreferredSize();
 		setSize(dim);
 		setPreferredSize(dim);
 		setBackground(Color.WHITE);
 		addMouseListener(new NimGamePanelMouseListener());
 		AnimationRunner.startIfNotStarted();
-		AnimationRunner.RUNNER.addPanelToRepaintList(this);
-		try {
-			image = ImageIO.read(new File(IMAGE_FILENAME));
-		} catch (IOException e) {
-			// makes a default image
-			image = new BufferedImage(50,50, BufferedImage.TYPE_4BYTE_ABGR);
-			image.createGraphics().fillOval(10, 10, 30, 30);
+		AnimationRunner.RUNNER.register(animations);
+		NimGameMetrics.register();
+		if (!playerTurn) {
+			startAITurn();
 		}
 	}
 	
@@ -94,15 +191,299 @@ public class NimGamePanel extends JPanel {
 	 * @param playerGoesFirst true if the player goes first, false if the AI goes first
 	 */
 	public void newGame(int numThings, int maxNumTakable, boolean lastTakenLoses, boolean playerGoesFirst) {
-		numLeft = numThings;
-		isTaken = new boolean[numThings];
+		reset(numThings, maxNumTakable, lastTakenLoses, playerGoesFirst);
+		playerTurn = playerGoesFirst;
+		startRecording();
+		if (!playerTurn) {
+			startAITurn();
+		}
+	}
+
+	/**
+	 * Sets up a new pile, stopping the game (or replay) going on
+	 */
+	private void reset(int numThings, int maxNumTakable, boolean lastTakenLoses, boolean playerGoesFirst) {
+		pieces = new PieceIndex(numThings);
 		this.maxNumTakable = maxNumTakable;
 		this.lastTakenLoses = lastTakenLoses;
-		playerTurn = playerGoesFirst;
+		this.playerGoesFirst = playerGoesFirst;
+		playerTurn = false;
 		numTakenThisTurn = 0;
+		game++;
+		recording = false;
+		aiTurn = false;
+		if (aiRequest != null) {
+			aiRequest.cancel();
+			aiRequest = null;
+		}
+		if (replayTimer != null) {
+			replayTimer.stop();
+			replayTimer = null;
+		}
+		applyBoardLayout(new BoardLayout(layout.getZoom(), numThings));
+	}
+
+	/**
+	 * Records the games played on the panel from now on in a journal (the current game too,
+	 * if nothing has been taken yet, otherwise recording starts with the next game).  A
+	 * journal records one game at a time, so each panel needs a journal of its own.  The
+	 * panel does not close the journal.  If writing to it fails, the error is printed and
+	 * recording stops.
+	 * @param journal the journal, or null to stop recording
+	 */
+	public void setJournal(GameJournal journal) {
+		this.journal = journal;
+		recording = false;
+		if (replayTimer == null && pieces.getNumLeft() == pieces.size()) {
+			startRecording();
+		}
+	}
+
+	/**
+	 * Starts the game going on in the journal, if there is one
+	 */
+	private void startRecording() {
+		if (journal == null)
+			return;
+		try {
+			journal.startGame(pieces.size(), maxNumTakable, lastTakenLoses, playerGoesFirst);
+			recording = true;
+		} catch (IOException e) {
+			journalFailed(e);
+		}
+	}
+
+	/**
+	 * Returns the journal the games are recorded in
+	 * @return the journal, or null if the games are not recorded
+	 */
+	public GameJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Records a take in the journal, if the game is being recorded
+	 */
+	private void record(int i, GameRecord.Mover mover) {
+		if (!recording)
+			return;
+		try {
+			journal.take(i, mover);
+		} catch (IOException e) {
+			journalFailed(e);
+		}
+	}
+
+	private void journalFailed(IOException e) {
+		System.err.println("Could not record the game, recording stopped: " + e);
+		journal = null;
+		recording = false;
+	}
+
+	private void aiFailed(int numTaken, Throwable failure) {
+		System.err.println("The AI failed, taking " + numTaken + " instead: " + failure);
+	}
+
+	/**
+	 * Plays a recorded game back on the panel, ending the game going on.  The takes are
+	 * animated with the timing they were recorded with, sped up by the given factor; the
+	 * board can not be played on until a new game is started.
+	 * @param record the game to replay
+	 * @param speed how many times faster than recorded to play it, for example 1 for the
+	 * original speed or 10 to skim it
+	 */
+	public void replay(final GameRecord record, final double speed) {
+		if (!(speed > 0))
+			throw new IllegalArgumentException("speed must be positive: " + speed);
+		reset(record.getNumThings(), record.getMaxNumTakable(), record.isLastTakenLoses(),
+				record.isPlayerGoesFirst());
+		if (record.getTakeCount() == 0)
+			return;
+		final AnimationDoneListener replayDone = new AnimationDoneListener() {
+			@Override
+			public void animationDone() {
+				// nothing to do, the takes are timed by the replay timer
+			}
+		};
+		replayTimer = new Timer(replayDelay(record, 0, speed), new ActionListener() {
+			private int next = 0;
+
+			public void actionPerformed(ActionEvent e) {
+				if (replayTimer != e.getSource())
+					return;
+				// all the takes that are due, several at once when sped up a lot
+				do {
+					int i = record.getTake(next++);
+					if (i < pieces.size() && !pieces.isTaken(i)) {
+						takeThing(i);
+						explode(i, replayDone);
+					}
+				} while (next < record.getTakeCount() && replayDelay(record, next, speed) == 0);
+				if (next == record.getTakeCount()) {
+					replayTimer.stop();
+					replayTimer = null;
+				} else {
+					replayTimer.setInitialDelay(replayDelay(record, next, speed));
+					replayTimer.restart();
+				}
+			}
+		});
+		replayTimer.setRepeats(false);
+		replayTimer.start();
+	}
+
+	/**
+	 * Returns the time in milliseconds to wait before the i-th take of a replay
+	 */
+	private static int replayDelay(GameRecord record, int i, double speed) {
+		long gap = record.getTime(i) - ((i == 0) ? 0 : record.getTime(i - 1));
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, Math.round(gap / speed)));
+	}
+
+	/**
+	 * Returns true while a recorded game is being played back
+	 * @return true if replaying
+	 */
+	public boolean isReplaying() {
+		return replayTimer != null;
+	}
+
+	/**
+	 * Sets how long the AI may think before it has to move.  When the time is up the AI
+	 * moves with its best move so far if it has one, and a fallback move otherwise.
+	 * @param millis the time the AI may take, in milliseconds
+	 */
+	public void setAIBudget(long millis) {
+		if (millis <= 0)
+			throw new IllegalArgumentException("AI budget must be positive: " + millis);
+		aiBudget = millis;
+	}
+
+	/**
+	 * Returns how long the AI may think before it has to move
+	 * @return the time the AI may take, in milliseconds
+	 */
+	public long getAIBudget() {
+		return aiBudget;
+	}
+
+	/**
+	 * Starts the AI's turn, asking the AI for its move in the background.  The move is
+	 * applied on the EDT once it is chosen, but not before AI_PAUSE has passed, so that the
+	 * AI's thinking overlaps the pause instead of following it.
+	 */
+	private void startAITurn() {
+		aiTurn = true;
+		numTakenThisTurn = 0;
+		final int thisGame = game;
+		final long start = System.nanoTime();
+		aiRequest = aiBot.choose(pieces.getNumLeft(), maxNumTakable, lastTakenLoses, aiBudget, EDT,
+				new AsyncNimGameAI.Listener() {
+					public void moveChosen(final int numToTake, AsyncNimGameAI.Outcome outcome,
+							Throwable failure) {
+						if (game != thisGame)
+							return;
+						if (failure != null) {
+							aiFailed(numToTake, failure);
+						}
+						long elapsed = System.nanoTime() - start;
+						int wait = AI_PAUSE - (int) TimeUnit.NANOSECONDS.toMillis(elapsed);
+						if (wait <= 0) {
+							applyAIMove(numToTake);
+							return;
+						}
+						Timer pause = new Timer(wait, new ActionListener() {
+							public void actionPerformed(ActionEvent e) {
+								if (game == thisGame) {
+									applyAIMove(numToTake);
+								}
+							}
+						});
+						pause.setRepeats(false);
+						pause.start();
+					}
+				});
+	}
+
+	/**
+	 * Takes the things the AI chose and animates them
+	 */
+	private void applyAIMove(int aiTakes) {
+		aiRequest = null;
+		// AsyncNimGameAI has replaced an illegal take with its fallback's
+		while (aiTakes > 0) {
+			// AI taking a piece randomly
+			int taken = pieces.select((int) (Math.random() * pieces.getNumLeft()));
+			takeThing(taken);
+			record(taken, GameRecord.Mover.AI);
+			aiTakes--;
+
+			// animation
+			explode(taken, aiDone);
+		}
+	}
+
+	/**
+	 * Registers the panel's animations with the AnimationRunner when it is added to the UI
+	 */
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		AnimationRunner.RUNNER.register(animations);
+	}
+
+	/**
+	 * Unregisters the panel's animations when it is removed from the UI, so a board that
+	 * has been closed is no longer animated or repainted
+	 */
+	@Override
+	public void removeNotify() {
+		AnimationRunner.RUNNER.unregister(animations);
+		super.removeNotify();
+	}
+
+	/**
+	 * Changes the level of detail the pile is drawn at
+	 * @param zoom the new zoom level
+	 */
+	public void setZoom(BoardZoom zoom) {
+		if (zoom != layout.getZoom()) {
+			applyBoardLayout(new BoardLayout(zoom, pieces.size()));
+			sprite = null;
+		}
+	}
+
+	/**
+	 * Returns the level of detail the pile is drawn at
+	 * @return the zoom level
+	 */
+	public BoardZoom getZoom() {
+		return layout.getZoom();
+	}
+
+	/**
+	 * Returns where the cells are drawn (used by the paint benchmark)
+	 */
+	BoardLayout getBoardLayout() {
+		return layout;
+	}
+
+	/**
+	 * Switches to the given layout, resizing the panel and dropping the board layer
+	 */
+	private void applyBoardLayout(BoardLayout newLayout) {
+		layout = newLayout;
+		boardLayer = null;
+		Dimension dim = layout.getPreferredSize();
+		setPreferredSize(dim);
+		if (getParent() == null) {
+			setSize(dim);
+		} else {
+			revalidate();
+		}
 		repaint();
 	}
-	
+
 	/**
 	 * Called by the Done button to indicate that the player is done with their current turn.
 	 * <P>
@@ -117,22 +498,249 @@ public class NimGamePanel extends JPanel {
 	}
 	
 	/**
-	 * Paints the NimGamePanel with the things and the animations currently happening.
+	 * Paints the NimGamePanel with the things and the animations currently happening.  The
+	 * things come from the cached board layer, and only this panel's animations that
+	 * overlap the clip are drawn (batched by the EffectRenderer), as its AnimationScope only
+	 * repaints the area they cover.
 	 */
 	public void paintComponent(Graphics g) {
+		long start = System.nanoTime();
+		NimGameMetrics.METRICS.paintStarted(start);
 		super.paintComponent(g);
 		Graphics2D g2 = (Graphics2D) g;
-		for (int i = 0; i < isTaken.length; i++) {
-			if (!isTaken[i]) {
-//				g2.fillRect(i%10*50, getHeight() - i/10*50 - 50, 50, 50);
-				int x = (50 - image.getWidth())/2 + i%10*50;
-				int y = (50 - image.getHeight())/2 + getHeight() - i/10*50-50;
-				g2.drawImage(image, x, y, this);
+		Rectangle clip = g2.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		BufferedImage layer = getBoardLayer();
+		g2.drawImage(layer, layerBounds.x, layerBounds.y, null);
+		effects.paint(g2, animations.getAnimatables(), clip);
+		if (overlayTimer != null) {
+			drawMetricsOverlay(g2);
+		}
+		NimGameMetrics.METRICS.paintDone(start, System.nanoTime());
+	}
+
+	/**
+	 * Shows or hides the metrics overlay, which draws the animation and paint metrics in
+	 * the top left corner of the visible part of the panel
+	 * @param show true to show the overlay
+	 */
+	public void setMetricsOverlayVisible(boolean show) {
+		if (show == (overlayTimer != null))
+			return;
+		if (show) {
+			overlayTimer = new Timer(500, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					repaintOverlay();
+				}
+			});
+			overlayTimer.start();
+			repaintOverlay();
+		} else {
+			overlayTimer.stop();
+			overlayTimer = null;
+			repaintOverlay();
+			overlayBounds.setBounds(0, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Returns true if the metrics overlay is shown
+	 * @return true if the metrics overlay is shown
+	 */
+	public boolean isMetricsOverlayVisible() {
+		return overlayTimer != null;
+	}
+
+	/**
+	 * Repaints the area the overlay was last drawn in, or the whole panel if it has not
+	 * been drawn yet
+	 */
+	private void repaintOverlay() {
+		if (overlayBounds.isEmpty()) {
+			repaint();
+		} else {
+			repaint(overlayBounds);
+		}
+	}
+
+	/**
+	 * Draws the metrics overlay, times in milliseconds
+	 */
+	private void drawMetricsOverlay(Graphics2D g2) {
+		NimGameMetrics m = NimGameMetrics.METRICS;
+		String[] lines = {
+				formatNanos("tick", m.getTickNanos()),
+				formatNanos("frame", m.getFrameIntervalNanos()),
+				formatNanos("post->paint", m.getPostToPaintNanos()),
+				formatNanos("paint", m.getPaintNanos()),
+				formatNanos("AI", m.getAINanos()),
+				"animating " + m.getCurrentAnimatables() + " (max " + m.getActiveAnimatables().getMax() + ")",
+		};
+		FontMetrics fm = g2.getFontMetrics();
+		int lineHeight = fm.getHeight();
+		// sized for a wide line rather than the current ones so that it does not change
+		// size (and need erasing) every time the numbers change
+		int width = fm.stringWidth("post->paint p50 000.0 p99 000.0 max 0000.0 ms");
+		for (String line: lines) {
+			width = Math.max(width, fm.stringWidth(line));
+		}
+		computeVisibleRect(visible);
+		int x = visible.x, y = visible.y, w = width + 8, h = lines.length * lineHeight + 8;
+		if (overlayBounds.x != x || overlayBounds.y != y || overlayBounds.width != w || overlayBounds.height != h) {
+			// scrolling moved the overlay or its text changed size, erase the old one and
+			// make sure all of the new one gets drawn
+			if (!overlayBounds.isEmpty()) {
+				repaint(overlayBounds);
+			}
+			overlayBounds.setBounds(x, y, w, h);
+			repaint(overlayBounds);
+		}
+		g2.setColor(new Color(0, 0, 0, 160));
+		g2.fill(overlayBounds);
+		g2.setColor(Color.WHITE);
+		y += 4 + fm.getAscent();
+		for (String line: lines) {
+			g2.drawString(line, x + 4, y);
+			y += lineHeight;
+		}
+	}
+
+	private static String formatNanos(String name, HistogramSnapshot h) {
+		return String.format("%s p50 %.1f p99 %.1f max %.1f ms", name, h.getP50() / 1e6,
+				h.getP99() / 1e6, h.getMax() / 1e6);
+	}
+
+	/**
+	 * Returns the board layer, rebuilding it if there is none or the visible part of the
+	 * panel has changed
+	 */
+	private BufferedImage getBoardLayer() {
+		computeVisibleRect(visible);
+		if (visible.isEmpty()) {
+			visible.setBounds(0, 0, 1, 1);
+		}
+		if (boardLayer != null && layerHeight == getHeight() && layerBounds.equals(visible))
+			return boardLayer;
+		Graphics2D g2;
+		GraphicsConfiguration gc = getGraphicsConfiguration();
+		if (sprite == null || spriteConfig != gc) {
+			sprite = SpriteCache.CACHE.get(SpriteCache.BOMB, layout.getCellSize(), gc);
+			spriteConfig = gc;
+		}
+		if (boardLayer == null || boardLayer.getWidth() != visible.width || boardLayer.getHeight() != visible.height) {
+			boardLayer = (gc != null) ? gc.createCompatibleImage(visible.width, visible.height, BufferedImage.TRANSLUCENT)
+					: new BufferedImage(visible.width, visible.height, BufferedImage.TYPE_INT_ARGB);
+			g2 = boardLayer.createGraphics();
+		} else {
+			g2 = boardLayer.createGraphics();
+			g2.setComposite(AlphaComposite.Clear);
+			g2.fillRect(0, 0, visible.width, visible.height);
+			g2.setComposite(AlphaComposite.SrcOver);
+		}
+		layerBounds.setBounds(visible);
+		layerHeight = getHeight();
+		g2.translate(-visible.x, -visible.y);
+		layout.cellRange(visible, getHeight(), cellRange);
+		for (int row = cellRange.y; row < cellRange.y + cellRange.height; row++) {
+			for (int col = cellRange.x; col < cellRange.x + cellRange.width; col++) {
+				int cell = layout.cellAt(col, row);
+				if (cell < 0)
+					break;
+				drawCell(g2, cell);
+			}
+		}
+		g2.dispose();
+		return boardLayer;
+	}
+
+	/**
+	 * Draws the given cell: the image of its thing if it is left, or for a block of
+	 * things, a box shaded by how many are left with the count in it
+	 */
+	private void drawCell(Graphics2D g2, int cell) {
+		int x = layout.cellX(cell), y = layout.cellY(cell, getHeight());
+		int size = layout.getCellSize();
+		if (layout.getZoom().getThingsPerCell() == 1) {
+			if (!pieces.isTaken(cell)) {
+				g2.drawImage(sprite, x + (size - sprite.getWidth())/2, y + (size - sprite.getHeight())/2, null);
 			}
+			return;
 		}
-		for (Animatable a: AnimationRunner.RUNNER.getAnimatables()) {
-			a.draw(g2);
+		int first = layout.firstThing(cell), end = layout.endThing(cell);
+		int left = pieces.countLeft(first, end);
+		if (left == 0)
+			return;
+		g2.setColor(new Color(BLOCK_COLOR.getRed(), BLOCK_COLOR.getGreen(), BLOCK_COLOR.getBlue(),
+				55 + 200 * left / (end - first)));
+		g2.fillRect(x + 2, y + 2, size - 4, size - 4);
+		g2.setColor(Color.BLACK);
+		String count = Integer.toString(left);
+		FontMetrics fm = g2.getFontMetrics();
+		g2.drawString(count, x + (size - fm.stringWidth(count))/2, y + (size + fm.getAscent() - fm.getDescent())/2);
+	}
+
+	/**
+	 * Takes the given thing from the pile, redrawing its cell in the board layer and
+	 * repainting it
+	 */
+	private void takeThing(int i) {
+		pieces.take(i);
+		int cell = layout.cellOf(i);
+		int size = layout.getCellSize();
+		cellBounds.setBounds(layout.cellX(cell), layout.cellY(cell, getHeight()), size, size);
+		if (boardLayer != null && layerHeight == getHeight() && layerBounds.intersects(cellBounds)) {
+			Graphics2D g2 = boardLayer.createGraphics();
+			g2.translate(-layerBounds.x, -layerBounds.y);
+			g2.setComposite(AlphaComposite.Clear);
+			g2.fill(cellBounds);
+			g2.setComposite(AlphaComposite.SrcOver);
+			drawCell(g2, cell);
+			g2.dispose();
 		}
+		repaint(cellBounds);
+	}
+
+	/**
+	 * Starts an explosion over the cell of the given thing (package-private for the paint
+	 * benchmark, which keeps the panel busy with explosions)
+	 */
+	void explode(int i, AnimationDoneListener done) {
+		int cell = layout.cellOf(i);
+		int size = layout.getCellSize();
+		int boxSize = Math.max(1, 2 * size / 50);
+		int side = Explosion.getSide(boxSize);
+		// (offset to the middle of the bomb image)
+		int x = layout.cellX(cell) + size/2 - side/2 - 5 * size/50;
+		int y = layout.cellY(cell, getHeight()) + size/2 - side/2 - 3 * size/50;
+		animations.addAnimatable(Explosion.obtain(x, y, boxSize, done));
+	}
+
+	public Dimension getPreferredScrollableViewportSize() {
+		Dimension dim = getPreferredSize();
+		return new Dimension(dim.width, Math.min(500, dim.height));
+	}
+
+	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+		return layout.getCellSize();
+	}
+
+	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+		if (orientation == SwingConstants.VERTICAL)
+			return Math.max(layout.getCellSize(), visibleRect.height - layout.getCellSize());
+		return visibleRect.width;
+	}
+
+	public boolean getScrollableTracksViewportWidth() {
+		return true;
+	}
+
+	/**
+	 * Fills the viewport if it is taller than the pile, keeping the pile at the bottom
+	 */
+	public boolean getScrollableTracksViewportHeight() {
+		return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
 	}
 	
 	/**
@@ -150,24 +758,18 @@ public class NimGamePanel extends JPanel {
 		public void mouseReleased(MouseEvent e) {
 			if (!playerTurn)
 				return;
-			int x = e.getX();
-			int y = e.getY();
-			if (x < NimGamePanel.this.getWidth() && x >= 0 && 
-					y < NimGamePanel.this.getHeight() && y >= 0) {
-				y = NimGamePanel.this.getHeight() - y;
-				// calculates the i in the array
-				int i = x / 50 + (y / 50 * 10);
-				if (i < isTaken.length && !isTaken[i] && numTakenThisTurn < maxNumTakable) {
+			int cell = layout.cellAt(e.getX(), e.getY(), getHeight());
+			if (cell >= 0) {
+				// the thing clicked on, or the first left in the block clicked on
+				int i = pieces.nextLeft(layout.firstThing(cell));
+				if (i >= 0 && i < layout.endThing(cell) && numTakenThisTurn < maxNumTakable) {
 					// takes the item
-					isTaken[i] = true;
+					takeThing(i);
+					record(i, GameRecord.Mover.PLAYER);
 					numTakenThisTurn++;
-					numLeft--;
-					repaint();
 
 					// animation
-					int animX = (50 - image.getWidth())/2 + i%10*50 - 7;
-					int animY = (50 - image.getHeight())/2 + getHeight() - i/10*50-50 - 5;
-					AnimationRunner.RUNNER.addAnimatable(new Explosion(animX,animY,2,playerDone));
+					explode(i, playerDone);
 
 					// if the player took the maximum number of things, then their turn is over
 					if (numTakenThisTurn == maxNumTakable) {
@@ -179,8 +781,8 @@ public class NimGamePanel extends JPanel {
 	}
 	
 	/**
-	 * The AnimationDoneListener for the player's turn animation.  This is where the AI is called
-	 * and where the AI animation is launched.
+	 * The AnimationDoneListener for the player's turn animation.  This is where the AI is asked
+	 * for its move (which is applied and animated when it arrives, see startAITurn).
 	 * 
 	 * @author Shawn Waldon
 	 *
@@ -188,20 +790,15 @@ public class NimGamePanel extends JPanel {
 	private class PlayerAnimationDoneListener extends AnimationDoneListener {
 
 		/*
-		 * If it is still the player's turn, or the animation is not done, return.
-		 * Otherwise, check for win/lose, call the AI and animate the AI's choices.
+		 * If it is still the player's turn, or the AI has already been asked, return.
+		 * Otherwise, check for win/lose and start the AI's turn.
 		 */
 		@Override
 		public void animationDone() {
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-			}
-			if (playerTurn) {
+			if (playerTurn || aiTurn || replayTimer != null) {
 				return;
 			}
-			if (numLeft == 0) {
+			if (pieces.getNumLeft() == 0) {
 				if (lastTakenLoses) {
 					JOptionPane.showMessageDialog(NimGamePanel.this, "You Lose");
 				} else {
@@ -209,32 +806,7 @@ public class NimGamePanel extends JPanel {
 				}
 				return;
 			}
-			numTakenThisTurn = 0;
-			// get number taken by AI
-			int aiTakes = aiBot.chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses);
-			// test for illegal value
-			if (aiTakes > numLeft || aiTakes > maxNumTakable || aiTakes <= 0) {
-				throw new IllegalStateException("AI just attempted to take illegal value: " + aiTakes);
-			}
-			// get things not taken
-			ArrayList<Integer> list = new ArrayList<Integer>();
-			for (int i = 0; i < isTaken.length; i++) {
-				if (!isTaken[i])
-					list.add(i);
-			}
-			while (aiTakes > 0) {
-				// AI taking a piece randomly
-				int taken = list.remove((int) (Math.random() * list.size()));
-				isTaken[taken] = true;
-				numLeft--;
-				aiTakes--;
-
-				// animation
-				int animX = (50 - image.getWidth())/2 + taken%10*50 -7;
-				int animY = (50 - image.getHeight())/2 + getHeight() - taken/10*50-50 - 5;
-				AnimationRunner.RUNNER.addAnimatable(new Explosion(animX,animY,2,aiDone));
-			}
-			repaint();
+			startAITurn();
 		}
 		
 	}
@@ -255,10 +827,11 @@ public class NimGamePanel extends JPanel {
 		public void animationDone() {
 			
 			// all executed on EDT so this will work
-			if (playerTurn)
+			if (playerTurn || !aiTurn)
 				return;
 			playerTurn = true;
-			if (numLeft == 0) {
+			aiTurn = false;
+			if (pieces.getNumLeft() == 0) {
 				if (lastTakenLoses) {
 					JOptionPane.showMessageDialog(NimGamePanel.this, "You Win");
 				} else {
@@ -0,0 +1,212 @@
+package waldonsm.nimgame.gui;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The images the boards are drawn with, loaded once for the whole process and shared by
+ * every NimGamePanel.  It is an enum for the same reason AnimationRunner is: there is only
+ * ever one.
+ * <P>
+ * A sprite is read from the classpath (or, failing that, the working directory, as when
+ * running from Eclipse) on a background thread started by preload, so a panel created
+ * later does not wait for ImageIO.  The image is converted to the format of the screen
+ * (see GraphicsConfiguration.createCompatibleImage), so drawing it is a plain blit instead
+ * of a conversion from the 4 byte ABGR ImageIO reads PNGs as, and it is scaled once for
+ * each cell size it is drawn at.  Preloading also scales it for every BoardZoom on the
+ * default screen.  Thread safe.
+ * @author Shawn Waldon
+ *
+ */
+public enum SpriteCache {
+
+	CACHE;
+
+	/**
+	 * The bomb drawn for each thing in the pile
+	 */
+	public static final String BOMB = "bomb.png";
+
+	/**
+	 * The images as read, converted, by name
+	 */
+	private final ConcurrentMap<String, FutureTask<BufferedImage>> sources =
+			new ConcurrentHashMap<String, FutureTask<BufferedImage>>();
+	/**
+	 * The images scaled for each cell size and screen
+	 */
+	private final ConcurrentMap<Key, BufferedImage> scaled = new ConcurrentHashMap<Key, BufferedImage>();
+
+	/**
+	 * A scaled image's name, cell size and screen (null for no screen)
+	 */
+	private static final class Key {
+		final String name;
+		final int cellSize;
+		final GraphicsConfiguration gc;
+
+		Key(String name, int cellSize, GraphicsConfiguration gc) {
+			this.name = name;
+			this.cellSize = cellSize;
+			this.gc = gc;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return name.equals(k.name) && cellSize == k.cellSize && gc == k.gc;
+		}
+
+		@Override
+		public int hashCode() {
+			return (name.hashCode() * 31 + cellSize) * 31 + System.identityHashCode(gc);
+		}
+	}
+
+	/**
+	 * Starts loading the given sprites on a background thread, then scales them for every
+	 * BoardZoom on the default screen.  Sprites already loaded or loading are skipped.
+	 * @param names the names of the sprites
+	 */
+	public void preload(final String... names) {
+		Thread loader = new Thread(new Runnable() {
+			public void run() {
+				GraphicsConfiguration gc = defaultConfiguration();
+				for (String name: names) {
+					for (BoardZoom zoom: BoardZoom.values()) {
+						get(name, zoom.getCellSize(), gc);
+					}
+				}
+			}
+		}, "SpriteCache loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * Returns a sprite scaled down to fit in the given cell size (or as it is if it fits
+	 * already), in a format compatible with the given screen.  If the sprite is not loaded
+	 * yet it is loaded now, or waited for if it is already loading.  If it cannot be read,
+	 * a plain dot is used instead.
+	 * @param name the name of the sprite
+	 * @param cellSize the size of the cells it is drawn in
+	 * @param gc the GraphicsConfiguration it is drawn to, or null if unknown
+	 * @return the image, which must not be changed
+	 */
+	public BufferedImage get(String name, int cellSize, GraphicsConfiguration gc) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+		Key key = new Key(name, cellSize, gc);
+		BufferedImage image = scaled.get(key);
+		if (image == null) {
+			image = scale(source(name), cellSize, gc);
+			BufferedImage old = scaled.putIfAbsent(key, image);
+			if (old != null)
+				image = old;
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the image as read, loading it in this thread if nobody has started to
+	 */
+	private BufferedImage source(final String name) {
+		FutureTask<BufferedImage> task = sources.get(name);
+		if (task == null) {
+			FutureTask<BufferedImage> t = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+				public BufferedImage call() {
+					return load(name);
+				}
+			});
+			task = sources.putIfAbsent(name, t);
+			if (task == null)
+				task = t;
+		}
+		// does nothing if it has run or is running in another thread
+		task.run();
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not load " + name, e.getCause());
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads a sprite, or makes the default one if it cannot be read
+	 */
+	private static BufferedImage load(String name) {
+		BufferedImage image = null;
+		try {
+			URL url = SpriteCache.class.getResource("/" + name);
+			if (url != null) {
+				image = ImageIO.read(url);
+			} else if (new File(name).isFile()) {
+				image = ImageIO.read(new File(name));
+			}
+		} catch (IOException e) {
+			// uses the default image
+		}
+		if (image == null) {
+			// makes a default image
+			image = new BufferedImage(50, 50, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2 = image.createGraphics();
+			g2.fillOval(10, 10, 30, 30);
+			g2.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Returns the image scaled to fit the cell size, in a compatible format
+	 */
+	private static BufferedImage scale(BufferedImage image, int cellSize, GraphicsConfiguration gc) {
+		int w = image.getWidth(), h = image.getHeight();
+		if (w > cellSize || h > cellSize) {
+			double scale = Math.min((double) cellSize / w, (double) cellSize / h);
+			w = Math.max(1, (int) (w * scale));
+			h = Math.max(1, (int) (h * scale));
+		}
+		BufferedImage result = (gc != null) ? gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT)
+				: new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = result.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2.drawImage(image, 0, 0, w, h, null);
+		g2.dispose();
+		return result;
+	}
+
+	/**
+	 * Returns the default screen's configuration, or null if there is no screen
+	 */
+	private static GraphicsConfiguration defaultConfiguration() {
+		if (GraphicsEnvironment.isHeadless())
+			return null;
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+	}
+}
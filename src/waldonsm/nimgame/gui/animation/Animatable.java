@@ -1,6 +1,7 @@
 package waldonsm.nimgame.gui.animation;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 
 /**
  * Represents an Animatable object.  i.e. some animation.
@@ -32,4 +33,12 @@ public interface Animatable extends Comparable<Animatable> {
 	 */
 	void draw(Graphics2D g2);
 
+	/**
+	 * Stores the screen area the animation draws to into rv, so that only that area needs
+	 * repainting.  The bounds must cover the current frame and should not be much larger.
+	 * @param rv the Rectangle to store the bounds in
+	 * @return rv
+	 */
+	Rectangle getBounds(Rectangle rv);
+
 }
@@ -0,0 +1,193 @@
+package waldonsm.nimgame.gui.animation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The set of running animations of an AnimationScope.
+ * <P>
+ * Any thread may add an Animatable.  Adds go into a bounded lock-free ring (spilling into a
+ * queue if the ring is ever full) and are moved into the live list by the animation thread
+ * at the start of each tick.  The live list is a plain array only the animation thread
+ * touches, which it walks by index.  An Animatable leaves the list when it is done, so
+ * nothing is ever looked up or compared, and two animations that compare equal are both
+ * kept.
+ * <P>
+ * Painting uses a read-only view of the list that is published whenever the membership
+ * changes, so a paint always sees a consistent set of animations without any locking.
+ * @author Shawn Waldon
+ *
+ */
+final class AnimatableRegistry {
+
+	/**
+	 * The size of the inbox ring, a power of two
+	 */
+	private static final int INBOX_SIZE = 1024;
+
+	private final AtomicReferenceArray<Animatable> inbox = new AtomicReferenceArray<Animatable>(INBOX_SIZE);
+	/**
+	 * The next ring position to claim (producers) and to take from (animation thread)
+	 */
+	private final AtomicLong inboxTail = new AtomicLong(), inboxHead = new AtomicLong();
+	/**
+	 * Where adds go when the ring is full
+	 */
+	private final ConcurrentLinkedQueue<Animatable> overflow = new ConcurrentLinkedQueue<Animatable>();
+	/**
+	 * The number of Animatables added and not yet retired, wherever they are
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * The live list, only used by the animation thread
+	 */
+	private Animatable[] live = new Animatable[64];
+	private int liveCount;
+	private Animatable[] retired = new Animatable[64];
+
+	private volatile List<Animatable> view = Collections.emptyList();
+
+	/**
+	 * Adds an Animatable.  It is animated from the next call to update.  Safe to call from
+	 * any thread, and does not allocate unless the inbox ring is full.
+	 * @param a the Animatable
+	 */
+	void add(Animatable a) {
+		if (a == null)
+			throw new NullPointerException();
+		size.incrementAndGet();
+		while (true) {
+			long tail = inboxTail.get();
+			// a stale head only makes the ring look fuller than it is
+			if (tail - inboxHead.get() >= INBOX_SIZE) {
+				overflow.add(a);
+				return;
+			}
+			if (inboxTail.compareAndSet(tail, tail + 1)) {
+				inbox.set((int) tail & (INBOX_SIZE - 1), a);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Moves everything added since the last call into the live list.  Animation thread only.
+	 * @return the number of live Animatables
+	 */
+	int update() {
+		int before = liveCount;
+		long head = inboxHead.get();
+		long tail = inboxTail.get();
+		while (head < tail) {
+			int slot = (int) head & (INBOX_SIZE - 1);
+			Animatable a = inbox.get(slot);
+			if (a == null) {
+				// claimed but not written yet, picked up next time
+				break;
+			}
+			inbox.lazySet(slot, null);
+			head++;
+			addLive(a);
+		}
+		inboxHead.set(head);
+		Animatable a;
+		while ((a = overflow.poll()) != null) {
+			addLive(a);
+		}
+		if (liveCount != before) {
+			publish();
+		}
+		return liveCount;
+	}
+
+	private void addLive(Animatable a) {
+		if (liveCount == live.length) {
+			live = Arrays.copyOf(live, liveCount * 2);
+		}
+		live[liveCount++] = a;
+	}
+
+	/**
+	 * Returns the i'th live Animatable.  Animation thread only.
+	 * @param i the index, less than the count returned by update
+	 * @return the Animatable
+	 */
+	Animatable get(int i) {
+		return live[i];
+	}
+
+	/**
+	 * Removes the live Animatables that are done, keeping the order of the rest.  Each one
+	 * removed has its done runnable submitted and, once the view without it has been
+	 * published, is recycled if it is Recyclable.  Animation thread only.
+	 */
+	void sweep() {
+		int kept = 0, removed = 0;
+		for (int i = 0; i < liveCount; i++) {
+			Animatable a = live[i];
+			if (a.isDone()) {
+				if (removed == retired.length) {
+					retired = Arrays.copyOf(retired, removed * 2);
+				}
+				retired[removed++] = a;
+			} else {
+				live[kept++] = a;
+			}
+		}
+		if (removed == 0)
+			return;
+		Arrays.fill(live, kept, liveCount, null);
+		liveCount = kept;
+		publish();
+		size.addAndGet(-removed);
+		for (int i = 0; i < removed; i++) {
+			Animatable a = retired[i];
+			retired[i] = null;
+			a.submitDoneRunnable();
+			// only once no new paint can find it through the view
+			if (a instanceof Recyclable) {
+				((Recyclable) a).recycle();
+			}
+		}
+	}
+
+	private void publish() {
+		view = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(live, liveCount)));
+	}
+
+	/**
+	 * Returns the Animatables as of the last update or sweep.  The list never changes, a new
+	 * one is published when the membership does.
+	 * @return the Animatables being animated
+	 */
+	List<Animatable> view() {
+		return view;
+	}
+
+	/**
+	 * Returns true if there is nothing added and not yet retired
+	 * @return true if there is nothing to animate
+	 */
+	boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	/**
+	 * Drops everything without retiring it.  Only safe while nothing else is using the
+	 * registry.
+	 */
+	void clear() {
+		update();
+		Arrays.fill(live, 0, liveCount, null);
+		liveCount = 0;
+		size.set(0);
+		publish();
+	}
+
+}
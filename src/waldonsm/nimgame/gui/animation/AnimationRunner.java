@@ -1,47 +1,46 @@
 package waldonsm.nimgame.gui.animation;
 
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
-import javax.swing.JPanel;
-import javax.swing.SwingUtilities;
+import waldonsm.nimgame.metrics.NimGameMetrics;
 
 /**
  * This in the animation runner for NimGame.  It is an enum because it is assumed that there is
  * ever only one of them.  Possibly a bad design choice, but for now it works.
+ * <P>
+ * The animations themselves belong to AnimationScopes (one per board), which register with
+ * the runner, so one thread drives every board and each board only repaints its own.
  * @author Shawn Waldon
  *
  */
 public enum AnimationRunner implements Runnable {
 	
 	RUNNER;
-	
+
 	/**
-	 * The thread running the animation
+	 * The time between frames of animation, in nanoseconds
 	 */
-	private Thread animThread;
+	static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(30);
+	
 	/**
-	 * The set of Animatable objects.
+	 * The thread running the animation (volatile so wake can unpark it without taking the
+	 * class lock)
 	 */
-	private ConcurrentSkipListSet<Animatable> animSet = new ConcurrentSkipListSet<Animatable>();
+	private volatile Thread animThread;
 	/**
-	 * The list of JPanels to repaint after setting the animation to the next frame
+	 * The registered scopes, held weakly so that a panel that is never unregistered can
+	 * still be collected.  Copied on write, guarded by AnimationRunner.class for writes.
 	 */
-	private CopyOnWriteArrayList<JPanel> panels = new CopyOnWriteArrayList<JPanel>();
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private volatile WeakReference<AnimationScope>[] scopes = new WeakReference[0];
 	/**
-	 * The Runnable that refreshes the JPanels (executed on Swing EDT via invokeLater
-	 * after every frame of animation)
+	 * The nanoTime the last tick started, 0 after the runner has been idle.  Only used by
+	 * the animation thread, for the frame interval metric.
 	 */
-	private Runnable paintRunnable = new Runnable() {
-		public void run() {
-			for (JPanel panel: panels) {
-				panel.repaint();
-			}
-		}
-	};
+	private long lastTickStart;
 
 	/**
 	 * Creates and starts the animation Thread if this has not already been done.
@@ -56,39 +55,103 @@ public enum AnimationRunner implements Runnable {
 	}
 	
 	/**
-	 * Adds the given JPanel to the list of panels to repaint after each animation
-	 * @param panel
+	 * Registers the given scope, so that its animations are run.  Does nothing if it is
+	 * already registered.
+	 * @param scope the scope
+	 */
+	public void register(AnimationScope scope) {
+		synchronized(AnimationRunner.class) {
+			if (indexOf(scope) >= 0)
+				return;
+			WeakReference<AnimationScope>[] old = scopes;
+			WeakReference<AnimationScope>[] updated = Arrays.copyOf(old, old.length + 1);
+			updated[old.length] = new WeakReference<AnimationScope>(scope);
+			scopes = updated;
+		}
+		wake();
+	}
+
+	/**
+	 * Unregisters the given scope.  Its animations stop where they are until it is
+	 * registered again.
+	 * @param scope the scope
+	 */
+	public void unregister(AnimationScope scope) {
+		synchronized(AnimationRunner.class) {
+			int i = indexOf(scope);
+			if (i >= 0) {
+				removeScope(i);
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the class lock held
 	 */
-	public void addPanelToRepaintList(JPanel panel) {
-		panels.add(panel);
+	private int indexOf(AnimationScope scope) {
+		WeakReference<AnimationScope>[] s = scopes;
+		for (int i = 0; i < s.length; i++) {
+			if (s[i].get() == scope)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Must be called with the class lock held
+	 */
+	private void removeScope(int i) {
+		WeakReference<AnimationScope>[] old = scopes;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		WeakReference<AnimationScope>[] updated = new WeakReference[old.length - 1];
+		System.arraycopy(old, 0, updated, 0, i);
+		System.arraycopy(old, i + 1, updated, i, old.length - i - 1);
+		scopes = updated;
 	}
 
 	/**
-	 * Runs the animation, calling next on each Animatable and then using the paintRunnable
-	 * repainting the Panels
+	 * Wakes the animation thread if it is parked because there was nothing to animate
+	 */
+	void wake() {
+		Thread t = animThread;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+
+	/**
+	 * Runs the animation, calling tick every FRAME_NANOS.  Each frame is scheduled from the
+	 * deadline of the last one rather than from when its tick finished, so the time taken
+	 * by a tick does not stretch the frame period.  If the ticks fall behind by more than a
+	 * frame the missed frames are skipped rather than run back to back to catch up.  While
+	 * there is nothing to animate the thread is parked until addAnimatable wakes it.
 	 */
 	@Override
 	public void run() {
-		// TODO Auto-generated method stub
-		boolean repaintNeeded = animSet.isEmpty();
+		long deadline = System.nanoTime();
 		while (!Thread.interrupted()) {
-            for (Iterator<Animatable> it = animSet.iterator(); it.hasNext();) {
-                Animatable a = it.next();
-                if (a.isDone()) {
-                    a.submitDoneRunnable();
-                    it.remove();
-                }
-                a.next();
-            }
-            if (repaintNeeded) {
-            	SwingUtilities.invokeLater(paintRunnable);
-            }
-            try {
-                Thread.sleep(30);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
+			if (isDoneWithAll()) {
+				// AnimationScope.addAnimatable unparks after adding, so an add that happens
+				// between the check and the park just makes the park return immediately
+				LockSupport.park(this);
+				deadline = System.nanoTime();
+				lastTickStart = 0;
+				continue;
+			}
+			tick();
+			deadline += FRAME_NANOS;
+			long wait = deadline - System.nanoTime();
+			if (wait < 0) {
+				// skip to the next deadline that is still in the future
+				long skipped = -wait / FRAME_NANOS + 1;
+				deadline += skipped * FRAME_NANOS;
+				wait += skipped * FRAME_NANOS;
+			}
+			while (wait > 0 && !Thread.currentThread().isInterrupted()) {
+				LockSupport.parkNanos(this, wait);
+				wait = deadline - System.nanoTime();
+			}
+		}
 		
 		synchronized(AnimationRunner.class) {
 			animThread = null;
@@ -96,27 +159,47 @@ public enum AnimationRunner implements Runnable {
 	}
 
 	/**
-	 * Returns true if the AnimationRunner is done animating everything
-	 * @return true if the AnimationRunner is done animating everything
+	 * Advances the animation one frame, ticking every registered scope (see
+	 * AnimationScope.tick) and dropping the scopes that have been garbage collected.
 	 */
-	public boolean isDoneWithAll() {
-		return animSet.isEmpty();
-	}
-	
-	/**
-	 * Gets the set of Animatable objects used by the AnimationRunner
-	 * @return the set of Animatable objects used by the AnimationRunner
-	 */
-	public Set<Animatable> getAnimatables() {
-		return Collections.unmodifiableSet(animSet);
+	void tick() {
+		long start = System.nanoTime();
+		int animated = 0;
+		boolean collected = false;
+		WeakReference<AnimationScope>[] s = scopes;
+		for (int i = 0; i < s.length; i++) {
+			AnimationScope scope = s[i].get();
+			if (scope == null) {
+				collected = true;
+			} else {
+				animated += scope.tick();
+			}
+		}
+		if (collected) {
+			synchronized(AnimationRunner.class) {
+				for (int i = scopes.length - 1; i >= 0; i--) {
+					if (scopes[i].get() == null) {
+						removeScope(i);
+					}
+				}
+			}
+		}
+		NimGameMetrics.METRICS.tick(start, System.nanoTime(), lastTickStart, animated);
+		lastTickStart = start;
 	}
-	
+
 	/**
-	 * Adds the given Animatable object to the set of Animatables to animate.
-	 * @param a the Animatable
+	 * Returns true if no registered scope has anything to animate
+	 * @return true if the AnimationRunner is done animating everything
 	 */
-	public void addAnimatable(Animatable a) {
-		animSet.add(a);
+	public boolean isDoneWithAll() {
+		WeakReference<AnimationScope>[] s = scopes;
+		for (int i = 0; i < s.length; i++) {
+			AnimationScope scope = s[i].get();
+			if (scope != null && !scope.isDoneWithAll())
+				return false;
+		}
+		return true;
 	}
 
 }
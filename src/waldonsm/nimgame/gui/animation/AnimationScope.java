@@ -0,0 +1,153 @@
+package waldonsm.nimgame.gui.animation;
+
+import java.awt.Rectangle;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import waldonsm.nimgame.metrics.NimGameMetrics;
+
+/**
+ * The animations belonging to one component.  Each board panel has its own scope, so it
+ * only repaints and draws its own animations, and all the scopes are driven by the one
+ * shared AnimationRunner.
+ * <P>
+ * The scope only holds its component weakly, and the runner only holds registered scopes
+ * weakly, so a panel that is thrown away without being unregistered is still collected.
+ * Panels should register when they are added to the UI and unregister when they are
+ * removed (see NimGamePanel.addNotify and removeNotify).
+ * @author Shawn Waldon
+ *
+ */
+public final class AnimationScope {
+
+	private final AnimatableRegistry animations = new AnimatableRegistry();
+	private final WeakReference<JComponent> component;
+	/**
+	 * The union of the areas changed by the animation since the component was last
+	 * repainted, empty if dirtyEmpty.  Guarded by "dirty".
+	 */
+	private final Rectangle dirty = new Rectangle();
+	private boolean dirtyEmpty = true;
+	/**
+	 * Scratch rectangles only used by the animation thread
+	 */
+	private final Rectangle tickDirty = new Rectangle(), bounds = new Rectangle();
+	/**
+	 * True while a paintRunnable is queued on the EDT and has not started yet, so that
+	 * ticks which happen in the meantime only add to the dirty area instead of queueing
+	 * another one
+	 */
+	private final AtomicBoolean paintPending = new AtomicBoolean();
+	/**
+	 * The Runnable that refreshes the dirty area of the component (executed on Swing EDT
+	 * via invokeLater after every frame of animation that changed something)
+	 */
+	private final Runnable paintRunnable = new Runnable() {
+		private final Rectangle area = new Rectangle();
+
+		public void run() {
+			// cleared before reading the dirty area so anything added after the read
+			// gets a paintRunnable of its own
+			paintPending.set(false);
+			synchronized(dirty) {
+				if (dirtyEmpty)
+					return;
+				area.setBounds(dirty);
+				dirtyEmpty = true;
+			}
+			JComponent c = component.get();
+			if (c != null) {
+				c.repaint(area.x, area.y, area.width, area.height);
+			}
+		}
+	};
+
+	/**
+	 * Creates a scope for the given component
+	 * @param component the component to repaint as the animations change, or null to
+	 * repaint nothing
+	 */
+	public AnimationScope(JComponent component) {
+		this.component = new WeakReference<JComponent>(component);
+	}
+
+	/**
+	 * Adds the given Animatable to the scope, waking the AnimationRunner if it is parked.
+	 * The Animatable is only animated while the scope is registered with the runner.
+	 * @param a the Animatable
+	 */
+	public void addAnimatable(Animatable a) {
+		animations.add(a);
+		AnimationRunner.RUNNER.wake();
+	}
+
+	/**
+	 * Gets the scope's Animatable objects as of the runner's last frame.  The list is an
+	 * unmodifiable snapshot that is safe to iterate from any thread.
+	 * @return the scope's Animatable objects
+	 */
+	public List<Animatable> getAnimatables() {
+		return animations.view();
+	}
+
+	/**
+	 * Returns true if the scope is done animating everything
+	 * @return true if the scope is done animating everything
+	 */
+	public boolean isDoneWithAll() {
+		return animations.isEmpty();
+	}
+
+	/**
+	 * Advances the scope's animations one frame, retiring the ones that are done, and
+	 * queues a repaint of the area they cover.  Nothing is repainted if nothing is
+	 * animating, and no paintRunnable is queued while the last one is still waiting to run.
+	 * Animation thread only.
+	 * @return the number of Animatables animated
+	 */
+	int tick() {
+		int animated = animations.update();
+		boolean changed = false;
+		for (int i = 0; i < animated; i++) {
+			Animatable a = animations.get(i);
+			// a retired animation's area is repainted one last time to erase it
+			a.getBounds(bounds);
+			if (!changed) {
+				tickDirty.setBounds(bounds);
+				changed = true;
+			} else {
+				tickDirty.add(bounds);
+			}
+			a.next();
+		}
+		animations.sweep();
+		if (changed) {
+			synchronized(dirty) {
+				if (dirtyEmpty) {
+					dirty.setBounds(tickDirty);
+					dirtyEmpty = false;
+				} else {
+					dirty.add(tickDirty);
+				}
+			}
+			if (paintPending.compareAndSet(false, true)) {
+				NimGameMetrics.METRICS.paintPosted(System.nanoTime());
+				SwingUtilities.invokeLater(paintRunnable);
+			}
+		}
+		return animated;
+	}
+
+	/**
+	 * Removes all the Animatables without running their done runnables (used by the
+	 * benchmarks, which tick the runner without its thread)
+	 */
+	void clear() {
+		animations.clear();
+	}
+
+}
@@ -0,0 +1,184 @@
+package waldonsm.nimgame.gui.animation;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws a list of Animatables with as few Java2D calls as possible.  Explosions are not
+ * drawn one by one: their cells are written straight into one shared ARGB buffer, which
+ * is then drawn with a single drawImage (or a few, if the explosions are so spread out that
+ * one blit would be mostly empty space).  Anything else is drawn with its own draw method
+ * (after drawing the explosions before it, so the stacking order is kept), and the output
+ * is the same as calling draw on each Animatable in turn.
+ * <P>
+ * The buffer covers only the explosions in the clip, not the whole clip, and is capped at
+ * MAX_PIXELS: explosions spread over more than that are drawn through a window of the
+ * buffer's size, moved to each one that falls outside it.  An EffectRenderer keeps its
+ * buffer between paints (making a smaller one when it is much bigger than needed) and must
+ * only be used by one thread (the EDT).
+ * @author Shawn Waldon
+ *
+ */
+public final class EffectRenderer {
+
+	/**
+	 * The most pixels the buffer covers, 8 MB of ARGB
+	 */
+	private static final int MAX_PIXELS = 1 << 21;
+	/**
+	 * The widest the window is when the explosions do not fit in MAX_PIXELS
+	 */
+	private static final int MAX_WIDTH = 2048;
+	/**
+	 * The buffer's sides are rounded up to a multiple of this, so an area growing a little
+	 * from one paint to the next does not make a new buffer every time
+	 */
+	private static final int GRAIN = 64;
+
+	private BufferedImage buffer;
+	private int[] pixels;
+	/**
+	 * The screen area the buffer covers in the current paint, empty until an explosion is
+	 * drawn
+	 */
+	private final Rectangle area = new Rectangle();
+	/**
+	 * The part of the clip covered by explosions in the current paint
+	 */
+	private final Rectangle union = new Rectangle();
+	/**
+	 * The part of the buffer written since it was last drawn, empty if none
+	 */
+	private final Rectangle pending = new Rectangle();
+	/**
+	 * The sum of the areas of the explosions in pending
+	 */
+	private long pendingArea;
+	private final Rectangle written = new Rectangle(), bounds = new Rectangle();
+
+	/**
+	 * Draws the Animatables that overlap the clip, in list order
+	 * @param g the Graphics2D to draw to
+	 * @param animations the Animatables
+	 * @param clip the area being painted
+	 */
+	public void paint(Graphics2D g, List<Animatable> animations, Rectangle clip) {
+		if (clip.isEmpty())
+			return;
+		union.setBounds(0, 0, 0, 0);
+		for (int i = 0, n = animations.size(); i < n; i++) {
+			Animatable a = animations.get(i);
+			if (a instanceof Explosion && a.getBounds(bounds).intersects(clip)) {
+				Rectangle.intersect(bounds, clip, bounds);
+				if (union.isEmpty()) {
+					union.setBounds(bounds);
+				} else {
+					union.add(bounds);
+				}
+			}
+		}
+		area.setBounds(0, 0, 0, 0);
+		for (int i = 0, n = animations.size(); i < n; i++) {
+			Animatable a = animations.get(i);
+			if (!a.getBounds(bounds).intersects(clip))
+				continue;
+			if (a instanceof Explosion) {
+				Rectangle.intersect(bounds, clip, written);
+				if (!area.contains(written)) {
+					flush(g);
+					placeArea(written);
+				}
+				if (!pending.isEmpty()) {
+					// explosions far apart would make the one blit mostly empty space,
+					// so start a new batch if it would be more than half empty
+					int unionW = Math.max(pending.x + pending.width, written.x + written.width)
+							- Math.min(pending.x, written.x);
+					int unionH = Math.max(pending.y + pending.height, written.y + written.height)
+							- Math.min(pending.y, written.y);
+					if ((long) unionW * unionH > 2 * (pendingArea + (long) written.width * written.height)) {
+						flush(g);
+					}
+				}
+				if (((Explosion) a).fillPixels(pixels, buffer.getWidth(), area, written)) {
+					if (pending.isEmpty()) {
+						pending.setBounds(written);
+					} else {
+						pending.add(written);
+					}
+					pendingArea += (long) written.width * written.height;
+				}
+			} else {
+				flush(g);
+				a.draw(g);
+			}
+		}
+		flush(g);
+	}
+
+	/**
+	 * Draws the written part of the buffer and clears it again
+	 */
+	private void flush(Graphics2D g) {
+		if (pending.isEmpty())
+			return;
+		int sx = pending.x - area.x, sy = pending.y - area.y;
+		g.drawImage(buffer, pending.x, pending.y, pending.x + pending.width, pending.y + pending.height,
+				sx, sy, sx + pending.width, sy + pending.height, null);
+		int scan = buffer.getWidth();
+		for (int row = sy; row < sy + pending.height; row++) {
+			Arrays.fill(pixels, row * scan + sx, row * scan + sx + pending.width, 0);
+		}
+		pending.setBounds(0, 0, 0, 0);
+		pendingArea = 0;
+	}
+
+	/**
+	 * Moves the buffer's area to cover the given part of an explosion: all the explosions
+	 * of the paint if they fit in MAX_PIXELS, otherwise as much of them around it as does.
+	 * Nothing may be pending.
+	 */
+	private void placeArea(Rectangle r) {
+		if ((long) union.width * union.height <= MAX_PIXELS) {
+			area.setBounds(union);
+		} else {
+			int w = Math.min(union.width, Math.max(r.width, MAX_WIDTH));
+			int h = Math.min(union.height, Math.max(r.height, MAX_PIXELS / w));
+			int x = Math.max(union.x, Math.min(r.x, union.x + union.width - w));
+			int y = Math.max(union.y, Math.min(r.y, union.y + union.height - h));
+			area.setBounds(x, y, w, h);
+		}
+		ensureBuffer(area.width, area.height);
+	}
+
+	/**
+	 * Makes sure the buffer is at least the given size.  A new one is made if it is too
+	 * small, covering the old size too while that stays within MAX_PIXELS, or if it is more
+	 * than four times the size needed.  The buffer is all transparent outside pending.
+	 */
+	private void ensureBuffer(int width, int height) {
+		width = roundUp(width);
+		height = roundUp(height);
+		if (buffer != null) {
+			int oldWidth = buffer.getWidth(), oldHeight = buffer.getHeight();
+			if (oldWidth >= width && oldHeight >= height) {
+				if ((long) oldWidth * oldHeight <= 4L * width * height)
+					return;
+			} else if ((long) Math.max(width, oldWidth) * Math.max(height, oldHeight) <= MAX_PIXELS) {
+				// so areas of different shapes do not take turns making new buffers
+				width = Math.max(width, oldWidth);
+				height = Math.max(height, oldHeight);
+			}
+		}
+		buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		pixels = ((DataBufferInt) buffer.getRaster().getDataBuffer()).getData();
+	}
+
+	private static int roundUp(int size) {
+		return (size + GRAIN - 1) / GRAIN * GRAIN;
+	}
+
+}
@@ -9,22 +9,79 @@ package waldonsm.nimgame.gui.animation;
 import java.awt.Color;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.SwingUtilities;
 
 /**
- * My implementation of an Explosion for the CS2440 explosion lab redone with thread safety
+ * My implementation of an Explosion for the CS2440 explosion lab redone with thread safety.
+ * <P>
+ * The Game Of Life sequence behind the explosion is always the same, so it is simulated
+ * once (see ExplosionFrames) and each Explosion is only a turn, a position and a color.
+ * Every frame is drawn with a single blit from the shared sprite sheet, or written straight
+ * into a shared pixel buffer when an EffectRenderer draws many explosions at once.
+ * <P>
+ * Explosions made by obtain are pooled: their AnimationScope recycles them when they are
+ * done and obtain reuses them, so starting an explosion does not allocate once the pool is
+ * warm.  Their colors come from a fixed palette, a new one picked at random each time, and
+ * the sprite sheet seen through each palette color is made once for each cell size.
  * @author Shawn Waldon
  */
-public class Explosion implements Animatable {
+public class Explosion implements Animatable, Recyclable {
 
-	private final GameOfLife model;
+	/**
+	 * Gives every instance a distinct id, so that two compare equal only if they are the same
+	 */
+	private static final AtomicLong ids = new AtomicLong();
 
 	/**
-	 * Guarded by "this"
+	 * The colors of pooled Explosions, spread over the range randomColor picks from
 	 */
-	private int turn;
-	private final Runnable doneRunnable;
+	private static final IndexColorModel[] PALETTE = new IndexColorModel[64];
+	static {
+		// an 8 by 8 grid over the greens and blues randomColor picks from
+		for (int i = 0; i < PALETTE.length; i++) {
+			float green = (i / 8 + 0.5f) / 16 + .25f;
+			float blue = (i % 8 + 0.5f) / 16;
+			PALETTE[i] = colorModel(new Color(1.0f, green, blue));
+		}
+	}
+	/**
+	 * The sprite sheet seen through each palette color, by cell size
+	 */
+	private static final Map<Integer, BufferedImage[]> TINTED = new HashMap<Integer, BufferedImage[]>();
+
+	/**
+	 * Only changed by obtain while the Explosion is in the pool, and published to the
+	 * animation thread by AnimationScope.addAnimatable
+	 */
+	private int x, y;
+	private int boxSize;
+	private Runnable doneRunnable;
+	/**
+	 * The color as an opaque ARGB int
+	 */
+	private int argb;
+	/**
+	 * The shared sprite sheet seen through this Explosion's color
+	 */
+	private BufferedImage sprites;
+	private final long id;
+	/**
+	 * True if this Explosion came from obtain and goes back to the pool when retired
+	 */
+	private final boolean pooled;
+
+	/**
+	 * Only advanced by the animation thread.  The frames themselves never change, so
+	 * publishing the turn is all the handoff to draw that is needed.
+	 */
+	private volatile int turn;
 
 	/**
 	 * Creates a new Explosion of with the given pixel size at the origin with the 
@@ -34,10 +91,7 @@ public class Explosion implements Animatable {
 	 * @param run the runnable to call for cleanup
 	 */
 	public Explosion(int size, Runnable run) {
-		Color color = new Color((float)1.0,(float)(Math.random()/2+.25),(float)Math.random()/2);
-		model = new GameOfLife(25,25,size, 0, 0, color);
-		setUp();
-		doneRunnable = run;
+		this(0, 0, size, run);
 	}
 
 	/**
@@ -49,97 +103,195 @@ public class Explosion implements Animatable {
 	 * @param run the runnable to call for cleanup
 	 */
 	public Explosion(int x, int y, int size, Runnable run) {
-		Color color = new Color((float)1.0,(float)(Math.random()/2+.25),(float)Math.random()/2);
-		model = new GameOfLife(25,25,size, x, y, color);
-		setUp();
+		this(x, y, size, randomColor(), run);
+	}
+
+	/**
+	 * Creates a new Explosion of the given pixel size and color at the specified coordinates
+	 * with the given done runnable
+	 * @param x the x position
+	 * @param y the y position
+	 * @param size the size of each pixel of the explosion
+	 * @param color the color of the explosion
+	 * @param run the runnable to call for cleanup
+	 */
+	public Explosion(int x, int y, int size, Color color, Runnable run) {
+		this(x, y, size, colorModel(color), null, run, false);
+	}
+
+	/**
+	 * Creates an Explosion, with its own sprite image if sprites is null
+	 */
+	private Explosion(int x, int y, int size, IndexColorModel colors, BufferedImage sprites, Runnable run,
+			boolean pooled) {
+		this.x = x;
+		this.y = y;
+		boxSize = size;
+		id = ids.getAndIncrement();
+		argb = colors.getRGB(1);
+		this.sprites = (sprites != null) ? sprites
+				: new BufferedImage(colors, ExplosionFrames.getSheet(size), false, null);
 		doneRunnable = run;
+		this.pooled = pooled;
 	}
 
+	/**
+	 * Returns the two color model of the sprite sheet: transparent, and the given color
+	 */
+	private static IndexColorModel colorModel(Color color) {
+		byte[] r = {0, (byte) color.getRed()};
+		byte[] g = {0, (byte) color.getGreen()};
+		byte[] b = {0, (byte) color.getBlue()};
+		return new IndexColorModel(1, 2, r, g, b, 0);
+	}
+
+	/**
+	 * Returns the sprite sheet of the given cell size seen through a palette color, making
+	 * it on first use
+	 */
+	private static BufferedImage tinted(int color, int size) {
+		synchronized (TINTED) {
+			BufferedImage[] images = TINTED.get(size);
+			if (images == null) {
+				images = new BufferedImage[PALETTE.length];
+				TINTED.put(size, images);
+			}
+			if (images[color] == null) {
+				images[color] = new BufferedImage(PALETTE[color], ExplosionFrames.getSheet(size), false, null);
+			}
+			return images[color];
+		}
+	}
 
 	/**
-	 * sets up the initial state of the Explosion
+	 * Returns an Explosion of the given pixel size at the specified coordinates with the
+	 * given done runnable, reusing a retired one if there is one.  Its color is picked at
+	 * random from the palette every time.  The Explosion must be given to an
+	 * AnimationScope, which recycles it when it is done, and must not be used after that.
+	 * Should only be called from one thread (normally the EDT).
+	 * @param x the x position
+	 * @param y the y position
+	 * @param size the size of each pixel of the explosion
+	 * @param run the runnable to call for cleanup
+	 * @return the Explosion
 	 */
-	private void setUp() {
-		addCross(13,10);
-		addCross(10,13);
-		addCross(13,16);
-		addCross(16,13);
+	public static Explosion obtain(int x, int y, int size, Runnable run) {
+		int color = (int) (Math.random() * PALETTE.length);
+		Explosion e = ExplosionPool.take();
+		if (e == null) {
+			return new Explosion(x, y, size, PALETTE[color], tinted(color, size), run, true);
+		}
+		e.x = x;
+		e.y = y;
+		e.boxSize = size;
+		e.argb = PALETTE[color].getRGB(1);
+		e.sprites = tinted(color, size);
+		e.doneRunnable = run;
+		e.turn = 0;
+		return e;
+	}
+
+	private static Color randomColor() {
+		return new Color((float)1.0,(float)(Math.random()/2+.25),(float)Math.random()/2);
 	}
 
 	/**
-	 * Adds a plus to the GameOfLife underlying model centered at the given coordinates
-	 * @param x the x coordinate
-	 * @param y the y coordinate
+	 * Returns the width and height of an Explosion with the given pixel size
+	 * @param size the size of each pixel of the explosion
+	 * @return the width and height in screen pixels
 	 */
-	private void addCross(int x, int y) {
-		model.addCell(y, x);
-		model.addCell(y, x+1);
-		model.addCell(y, x-1);
-		model.addCell(y+1, x);
-		model.addCell(y-1, x);
+	public static int getSide(int size) {
+		return ExplosionFrames.CELLS * size;
 	}
 
 	/**
 	 * Draws the Explosion
 	 */
 	public void draw(Graphics2D g) {
-		synchronized(this) {
-			if (turn == 37)
-				return;
-		}
-		model.draw(g);
+		int t = turn;
+		if (t == ExplosionFrames.TURNS)
+			return;
+		int side = ExplosionFrames.CELLS * boxSize;
+		g.drawImage(sprites, x, y, x + side, y + side, 0, t * side, side, (t + 1) * side, null);
 	}
 
 	/**
-	 * Calls next on the underlying model, then does some processing
+	 * Writes the Explosion's current frame into an ARGB pixel buffer, exactly as draw would
+	 * paint it.  Pixel (px, py) of the screen is pixels[(py - area.y) * scan + px - area.x],
+	 * and only the pixels inside area are written.
+	 * @param pixels the pixel buffer
+	 * @param scan the number of pixels in a row of the buffer
+	 * @param area the screen area the buffer covers
+	 * @param written the screen area that was written to is stored here
+	 * @return true if anything was written
 	 */
-	public void next() {
-		synchronized(this) {
-			if (turn == 37)
-				return;
-			turn++;
+	boolean fillPixels(int[] pixels, int scan, Rectangle area, Rectangle written) {
+		int t = turn;
+		if (t == ExplosionFrames.TURNS)
+			return false;
+		int size = boxSize;
+		int side = ExplosionFrames.CELLS * size;
+		int x0 = Math.max(x, area.x), x1 = Math.min(x + side, area.x + area.width);
+		int y0 = Math.max(y, area.y), y1 = Math.min(y + side, area.y + area.height);
+		if (x0 >= x1 || y0 >= y1)
+			return false;
+		written.setBounds(x0, y0, x1 - x0, y1 - y0);
+		long[] mask = ExplosionFrames.getMask(t);
+		for (int py = y0; py < y1; py++) {
+			long bits = mask[(py - y) / size];
+			int row = (py - area.y) * scan - area.x;
+			while (bits != 0) {
+				int cx = x + Long.numberOfTrailingZeros(bits) * size;
+				int from = Math.max(cx, x0), to = Math.min(cx + size, x1);
+				for (int px = from; px < to; px++) {
+					pixels[row + px] = argb;
+				}
+				bits &= bits - 1;
+			}
 		}
-		model.next();
-		processTurn();
+		return true;
 	}
 
 	/**
-	 * Returns true if the Explosion is done
+	 * Returns the area covered by the Explosion's frames
 	 */
-	public boolean isDone() {
-		synchronized (this) {
-			return turn == 37;
-		}
+	public Rectangle getBounds(Rectangle rv) {
+		int side = ExplosionFrames.CELLS * boxSize;
+		rv.setBounds(x, y, side, side);
+		return rv;
 	}
 
 	/**
-	 * Does some processing on the model is the turn is 25 or 32
+	 * Advances the Explosion to its next frame
 	 */
-	private void processTurn() {
-		boolean twentyfive, thirtyTwo;
-		synchronized (this) {
-			twentyfive = (turn == 25);
-			thirtyTwo = (turn == 32);
-		}
-		if (twentyfive) {
-			addCross(5,13);
-			addCross(13,5);
-			addCross(21,13);
-			addCross(13,21);
-		} else if (thirtyTwo) {
-			model.addCell(5, 13);
-			model.addCell(13, 5);
-			model.addCell(21, 13);
-			model.addCell(13, 21);
+	public void next() {
+		int t = turn;
+		if (t != ExplosionFrames.TURNS) {
+			turn = t + 1;
 		}
 	}
 
+	/**
+	 * Returns true if the Explosion is done
+	 */
+	public boolean isDone() {
+		return turn == ExplosionFrames.TURNS;
+	}
+
 	/**
 	 * Compares the Animatable to some other Animatable.
 	 */
 	public int compareTo(Animatable other) {
 		if (other instanceof Explosion) {
-			return model.compareTo(((Explosion)other).model);
+			Explosion o = (Explosion) other;
+			if (x != o.x)
+				return (x > o.x) ? 1 : -1;
+			else if (y != o.y)
+				return (y > o.y) ? 1 : -1;
+			else if (boxSize != o.boxSize)
+				return (boxSize > o.boxSize) ? 1 : -1;
+			else
+				return (id > o.id) ? 1 : (id < o.id) ? -1 : 0;
 		} else {
 			return getClass().getName().compareTo(other.getClass().getName());
 		}
@@ -152,4 +304,14 @@ public class Explosion implements Animatable {
 	public void submitDoneRunnable() {
 		SwingUtilities.invokeLater(doneRunnable);
 	}
+
+	/**
+	 * Returns the Explosion to the pool if it came from obtain.  It is left in its done
+	 * state, so drawing it does nothing until it is reused.
+	 */
+	public void recycle() {
+		if (pooled) {
+			ExplosionPool.release(this);
+		}
+	}
 }
@@ -0,0 +1,144 @@
+package waldonsm.nimgame.gui.animation;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The frames of the Explosion animation.  Every Explosion plays the same Game Of Life
+ * sequence (only its position and color differ), so the sequence is simulated once per
+ * process and shared, both as bit masks and as 1-bit sprite sheets for each cell size.
+ * @author Shawn Waldon
+ *
+ */
+final class ExplosionFrames {
+
+	/**
+	 * The number of frames in the animation, the Explosion is done on this turn
+	 */
+	static final int TURNS = 37;
+	/**
+	 * The width and height (in cells) of the board, including its dead border
+	 */
+	static final int CELLS = 27;
+
+	/**
+	 * The live cells of each frame, MASKS[turn][row] having bit j set for column j
+	 */
+	private static final long[][] MASKS = simulate();
+
+	/**
+	 * The sprite sheets by cell size, each holding all the frames stacked vertically.
+	 * Guarded by SHEETS.
+	 */
+	private static final Map<Integer, WritableRaster> SHEETS = new HashMap<Integer, WritableRaster>();
+
+	private ExplosionFrames() {
+	}
+
+	/**
+	 * Returns the live cells of the given frame, element i having bit j set if the cell in
+	 * row i, column j is alive.  The array must not be modified.
+	 * @param turn the frame, 0 to TURNS-1
+	 * @return the rows of the frame
+	 */
+	static long[] getMask(int turn) {
+		return MASKS[turn];
+	}
+
+	/**
+	 * Returns the 1-bit sprite sheet for the given cell size, rendering it on first use.
+	 * Frame t occupies rows t*CELLS*size up to (t+1)*CELLS*size.  The raster must not be
+	 * modified.
+	 * @param size the size of each cell (in pixels wide/high)
+	 * @return the sprite sheet
+	 */
+	static WritableRaster getSheet(int size) {
+		synchronized (SHEETS) {
+			WritableRaster sheet = SHEETS.get(size);
+			if (sheet == null) {
+				sheet = renderSheet(size);
+				SHEETS.put(size, sheet);
+			}
+			return sheet;
+		}
+	}
+
+	private static WritableRaster renderSheet(int size) {
+		int side = CELLS * size;
+		WritableRaster sheet = Raster.createPackedRaster(DataBuffer.TYPE_BYTE, side, side * TURNS, 1, 1, null);
+		for (int t = 0; t < TURNS; t++) {
+			for (int i = 0; i < CELLS; i++) {
+				long bits = MASKS[t][i];
+				while (bits != 0) {
+					int j = Long.numberOfTrailingZeros(bits);
+					for (int py = 0; py < size; py++) {
+						for (int px = 0; px < size; px++) {
+							sheet.setSample(j * size + px, t * side + i * size + py, 0, 1);
+						}
+					}
+					bits &= bits - 1;
+				}
+			}
+		}
+		return sheet;
+	}
+
+	/**
+	 * Runs the explosion's Game Of Life sequence, recording the cells of every frame
+	 */
+	private static long[][] simulate() {
+		GameOfLife model = new GameOfLife(CELLS - 2, CELLS - 2);
+		addCross(model, 13, 10);
+		addCross(model, 10, 13);
+		addCross(model, 13, 16);
+		addCross(model, 16, 13);
+		long[][] masks = new long[TURNS][];
+		for (int turn = 0; turn < TURNS; turn++) {
+			if (turn > 0) {
+				model.next();
+				processTurn(model, turn);
+			}
+			masks[turn] = new long[CELLS];
+			for (int i = 1; i < CELLS - 1; i++) {
+				for (int j = 1; j < CELLS - 1; j++) {
+					if (model.isCell(i, j))
+						masks[turn][i] |= 1L << j;
+				}
+			}
+		}
+		return masks;
+	}
+
+	/**
+	 * Adds some more cells to the model if the turn is 25 or 32
+	 */
+	private static void processTurn(GameOfLife model, int turn) {
+		if (turn == 25) {
+			addCross(model, 5, 13);
+			addCross(model, 13, 5);
+			addCross(model, 21, 13);
+			addCross(model, 13, 21);
+		} else if (turn == 32) {
+			model.addCell(5, 13);
+			model.addCell(13, 5);
+			model.addCell(21, 13);
+			model.addCell(13, 21);
+		}
+	}
+
+	/**
+	 * Adds a plus to the model centered at the given coordinates
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 */
+	private static void addCross(GameOfLife model, int x, int y) {
+		model.addCell(y, x);
+		model.addCell(y, x+1);
+		model.addCell(y, x-1);
+		model.addCell(y+1, x);
+		model.addCell(y-1, x);
+	}
+}
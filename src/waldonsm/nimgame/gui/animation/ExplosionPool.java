@@ -0,0 +1,54 @@
+package waldonsm.nimgame.gui.animation;
+
+/**
+ * The pool of retired Explosions reused by Explosion.obtain.  It is a plain stack under a
+ * lock rather than a concurrent queue since a queue would allocate a node for every
+ * Explosion released, and the pool is only used by the thread starting explosions (the EDT)
+ * and the animation thread retiring them, once per explosion each.
+ * @author Shawn Waldon
+ *
+ */
+final class ExplosionPool {
+
+	/**
+	 * More than enough for the explosions of the largest turn on screen at once, anything
+	 * released past this is left to the garbage collector
+	 */
+	private static final int CAPACITY = 256;
+
+	private static final Explosion[] free = new Explosion[CAPACITY];
+	/**
+	 * Guarded by "free"
+	 */
+	private static int size;
+
+	private ExplosionPool() {
+	}
+
+	/**
+	 * Takes an Explosion from the pool
+	 * @return a retired Explosion, or null if the pool is empty
+	 */
+	static Explosion take() {
+		synchronized(free) {
+			if (size == 0)
+				return null;
+			Explosion e = free[--size];
+			free[size] = null;
+			return e;
+		}
+	}
+
+	/**
+	 * Puts a retired Explosion back in the pool
+	 * @param e the Explosion, which must be done
+	 */
+	static void release(Explosion e) {
+		synchronized(free) {
+			if (size < CAPACITY) {
+				free[size++] = e;
+			}
+		}
+	}
+
+}
@@ -7,22 +7,101 @@ package waldonsm.nimgame.gui.animation;
 
 /**
  * My implementation of John Conway's Game Of Life.
+ * <P>
+ * The board is triple buffered so that drawing never waits for (or copies) the simulation.
+ * One thread changes the board (addCell and next) and one thread draws it.  Each finished
+ * generation is published by swapping it into a shared slot, and draw swaps the newest
+ * published one out in exchange for the one it drew last, so the two threads never work
+ * on the same buffer and neither takes a lock.
+ * <P>
+ * The board is divided into tiles of TILE_ROWS rows by TILE_WORDS words, and each frame
+ * records which of its tiles hold a cell.  A tile is only computed if it or one of its
+ * eight neighbours holds a cell (anything else stays empty), and only tiles holding cells
+ * are drawn, so the cost of a generation follows the live part of the board rather than
+ * its area.  A board given a ForkJoinPool (for a large board, such as a whole panel or
+ * screen) computes its tiles in parallel on the pool.  Each tile writes only its own part
+ * of the new frame and reads its neighbours' edge rows (the halo) straight from the old
+ * one, which nothing writes during the step, so the tiles need no locks between them.
  * @author Shawn Waldon
  */
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.util.Random;
+import java.awt.Rectangle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 class GameOfLife implements Animatable {
 
-	private static final Random gen = new Random();
+	/**
+	 * Gives every instance a distinct id, so that two compare equal only if they are the same
+	 */
+	private static final AtomicLong ids = new AtomicLong();
+
+	/**
+	 * The height of a tile in rows and its width in words (of 64 cells)
+	 */
+	static final int TILE_ROWS = 64, TILE_WORDS = 4;
+	/**
+	 * The most tiles a task computes without splitting them with another
+	 */
+	private static final int LEAF_TILES = 2;
+
+	/**
+	 * Each row of the board (including the dead border) is packed into "words" longs, bit j
+	 * of the row being column j.  live[t] is true if tile t holds a cell.  The generation
+	 * orders the published frames.
+	 */
+	private static final class Frame {
+		final long[] cells;
+		final boolean[] live;
+		volatile long generation;
+
+		Frame(int size, int tiles) {
+			cells = new long[size];
+			live = new boolean[tiles];
+		}
+	}
 
-	// Guarded by "this"
-	private int[][] field;
+	/**
+	 * The newest published frame, or null while the changing thread has taken it back to
+	 * add cells to it
+	 */
+	private final AtomicReference<Frame> shared;
+	/**
+	 * The newest frame, which next() computes from and isCell reads.  Only touched by the
+	 * thread changing the board.
+	 */
+	private Frame latest;
+	/**
+	 * The frame the next generation is computed into.  Only touched by the thread changing
+	 * the board.
+	 */
+	private Frame scratch;
+	private long generation;
+	/**
+	 * The frame draw works from.  Only touched by the thread calling draw() (the EDT).
+	 */
+	private Frame front;
+	private final int rows, cols, words;
+	private final int tileRows, tileCols;
+	/**
+	 * The tiles to compute in the current step (only used by the thread changing the board)
+	 */
+	private final int[] work;
+	/**
+	 * Computes the tiles in parallel, null to compute them in the calling thread
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * The columns that may hold a cell (1 to cols-2) for each word of a row
+	 */
+	private final long[] colMask;
 	private final int boxSize;
 	private final int x, y;
-	private final int randIndex;
+	private final long id;
 
 	private final Color color;
 
@@ -32,13 +111,7 @@ class GameOfLife implements Animatable {
 	 * @param w the width of the board (in cells)
 	 */
 	public GameOfLife(int h, int w) {
-		if (h <= 0 || w <= 0)
-			throw new IllegalArgumentException();
-		field = new int[h+2][w+2];
-		boxSize = 1;
-		x = y = 0;
-		color = Color.orange;
-		randIndex = gen.nextInt();
+		this(h, w, 1, 0, 0, Color.orange);
 	}
 
 	/**
@@ -52,31 +125,69 @@ class GameOfLife implements Animatable {
 	 * @param c the Color to draw the GameOfLife cells
 	 */
 	public GameOfLife(int h, int w, int size, int x, int y, Color c) {
+		this(h, w, size, x, y, c, null);
+	}
+
+	/**
+	 * Creates a new GameOfLife board whose generations are computed on the given pool,
+	 * for boards large enough to be worth it.
+	 * @param h the height of the board (in cells)
+	 * @param w the width of the board (in cells)
+	 * @param size the size of each cell (in pixels wide/high)
+	 * @param x the x position of the board
+	 * @param y the y position of the board
+	 * @param c the Color to draw the GameOfLife cells
+	 * @param pool the pool to compute the tiles on, or null to compute them in the thread
+	 * calling next()
+	 */
+	public GameOfLife(int h, int w, int size, int x, int y, Color c, ForkJoinPool pool) {
 		if (h <= 0 || w <= 0) {
 			throw new IllegalArgumentException();
 		}
-		field = new int[h+2][w+2];
+		rows = h + 2;
+		cols = w + 2;
+		words = (cols + 63) >>> 6;
+		tileRows = (rows + TILE_ROWS - 1) / TILE_ROWS;
+		tileCols = (words + TILE_WORDS - 1) / TILE_WORDS;
+		work = new int[tileRows * tileCols];
+		this.pool = pool;
+		latest = new Frame(rows * words, work.length);
+		scratch = new Frame(rows * words, work.length);
+		front = new Frame(rows * words, work.length);
+		shared = new AtomicReference<Frame>(latest);
+		colMask = new long[words];
+		for (int j = 1; j < cols - 1; j++) {
+			colMask[j >>> 6] |= 1L << (j & 63);
+		}
 		boxSize = size;
 		this.x = x;
 		this.y = y;
 		color = c;
-		randIndex = gen.nextInt();
+		id = ids.getAndIncrement();
 	}
 
 	/**
-	 * Adds a cell to the board at the given position.
+	 * Adds a cell to the board at the given position.  The cell is set in place if the
+	 * drawing thread has not picked up the newest frame yet, otherwise it is set in a copy.
 	 * @param h the vertical position on the board
 	 * @param w the horizontal position on the board
 	 */
 	public void addCell(int h, int w) {
-		synchronized(this) {
-			if (h > field.length-2 || h < 1 || w > field[0].length-2 || w < 1)
-				throw new IllegalArgumentException();
-			field[h][w] = 1;
-			//                for (int[] i : field)
-				//                System.out.println(Arrays.toString(i));
-			//                System.out.println("\n\n");
+		if (h > rows-2 || h < 1 || w > cols-2 || w < 1)
+			throw new IllegalArgumentException();
+		if (!shared.compareAndSet(latest, null)) {
+			// draw has it, so edit a copy and publish that instead
+			Frame edited = scratch;
+			System.arraycopy(latest.cells, 0, edited.cells, 0, edited.cells.length);
+			System.arraycopy(latest.live, 0, edited.live, 0, edited.live.length);
+			latest = edited;
+			// the frame draw gave back when it took the newest one becomes the scratch
+			scratch = shared.getAndSet(null);
 		}
+		latest.cells[h * words + (w >>> 6)] |= 1L << (w & 63);
+		latest.live[tileOf(h, w >>> 6)] = true;
+		latest.generation = ++generation;
+		shared.set(latest);
 	}
 
 	/**
@@ -86,103 +197,216 @@ class GameOfLife implements Animatable {
 	 * @return true if the given position is a cell
 	 */
 	public boolean isCell(int h, int w) {
-		synchronized(this) {
-			if (h > field.length-2 || h < 1 || w > field[0].length-2 || w < 1)
-				throw new IllegalArgumentException();
-			return field[h][w] == 1;
-		}
+		if (h > rows-2 || h < 1 || w > cols-2 || w < 1)
+			throw new IllegalArgumentException();
+		return (latest.cells[h * words + (w >>> 6)] & (1L << (w & 63))) != 0;
 	}
 
 	/**
-	 * Draws the GameOfLife board to the given Graphics2D
+	 * Draws the newest published generation of the GameOfLife board to the given
+	 * Graphics2D
 	 */
 	public void draw(Graphics2D g) {
-		int[][] fieldCopy;
-		synchronized(this) {
-			fieldCopy = getCopyOfField();
+		Frame s = shared.get();
+		if (s != null && s.generation > front.generation && shared.compareAndSet(s, front)) {
+			front = s;
 		}
-		Graphics2D g2 = (Graphics2D) g;
-		g2.setColor(color);
-		for (int i = 0; i <fieldCopy.length; i++) {
-			for (int j = 0; j <fieldCopy[i].length; j++) {
-				if (fieldCopy[i][j] == 1)
-					g2.fillRect(x + j * boxSize, y + i * boxSize, boxSize, boxSize);
+		long[] cells = front.cells;
+		boolean[] live = front.live;
+		g.setColor(color);
+		for (int t = 0; t < live.length; t++) {
+			if (!live[t])
+				continue;
+			int row0 = (t / tileCols) * TILE_ROWS, word0 = (t % tileCols) * TILE_WORDS;
+			int rowEnd = Math.min(rows, row0 + TILE_ROWS), wordEnd = Math.min(words, word0 + TILE_WORDS);
+			for (int i = row0; i < rowEnd; i++) {
+				for (int k = word0; k < wordEnd; k++) {
+					long bits = cells[i * words + k];
+					while (bits != 0) {
+						int j = (k << 6) + Long.numberOfTrailingZeros(bits);
+						g.fillRect(x + j * boxSize, y + i * boxSize, boxSize, boxSize);
+						bits &= bits - 1;
+					}
+				}
 			}
 		}
-		//                for (int[] i : fieldCopy)
-		//                System.out.println(Arrays.toString(i));
-		//                System.out.println("\n\n");
 	}
 
 	/**
-	 * Must be called from within a synchronized block, used by draw to avoid a large 
-	 * synchronized block.
-	 * @return
+	 * Returns the tile holding word k of row i
 	 */
-	private int[][] getCopyOfField() {
-		int[][] result = new int[field.length][field[0].length];
-		for (int i = 0; i < result.length; i++) {
-			System.arraycopy(field[i], 0, result[i], 0, field[i].length);
-			//                for (int j = 0; j < result[i].length; j++) {
-			//                    result[i][j] = field[i][j];
-			//                }
-		}
-		return result;
+	private int tileOf(int i, int k) {
+		return (i / TILE_ROWS) * tileCols + k / TILE_WORDS;
 	}
 
 	/**
-	 * Advances the GameOfLife board to the next iteration
+	 * Returns the area covered by the board, including its border
+	 */
+	public Rectangle getBounds(Rectangle rv) {
+		rv.setBounds(x, y, cols * boxSize, rows * boxSize);
+		return rv;
+	}
+
+	/**
+	 * Advances the GameOfLife board to the next iteration.  The new generation is computed
+	 * from the newest frame into the scratch frame, a word (64 cells) at a time, and is then
+	 * published, the frame it replaces becoming the next scratch frame.  Only the tiles
+	 * next to a cell are computed (on the pool if there is one and more than one tile to
+	 * compute), and the rest are cleared if the scratch frame has cells there.
 	 */
 	public void next() {
-		int[][] newField;
-		synchronized(this) {
-			newField = new int[field.length][field[0].length];
-		}
-		for (int i = 1; i < newField.length-1; i++) {
-			for (int j = 1; j < newField[i].length-1; j++) {
-				//                            System.out.println(willBeCell(i,j));q
-				if (willBeCell(i,j)) {
-					newField[i][j] = 1;
+		Frame src = latest, dst = scratch;
+		int count = 0;
+		for (int tr = 0; tr < tileRows; tr++) {
+			for (int tc = 0; tc < tileCols; tc++) {
+				int t = tr * tileCols + tc;
+				if (nearCell(src.live, tr, tc)) {
+					work[count++] = t;
+				} else if (dst.live[t]) {
+					clearTile(dst, t);
 				}
 			}
 		}
-		//                for (int[] i : newField)
-		//                System.out.println(Arrays.toString(i));
-		//                System.out.println("\n\n");
-		synchronized(this) {
-			field = newField;
+		if (pool == null || count <= LEAF_TILES) {
+			for (int n = 0; n < count; n++) {
+				stepTile(src, dst, work[n]);
+			}
+		} else {
+			pool.invoke(new StepTask(src, dst, 0, count));
 		}
+		latest = dst;
+		latest.generation = ++generation;
+		scratch = shared.getAndSet(latest);
 	}
 
 	/**
-	 * Returns true if the given position will be a cell in the next generation
-	 * @param h the vertical position on the board
-	 * @param w the horizontal position on the board
-	 * @return true if the given position will be a cell in the next generation
+	 * Returns true if the given tile or one of its neighbours holds a cell
 	 */
-	private boolean willBeCell(int h, int w) {
-		int surroundCount = getSurroundCount(h,w);
-		//                System.out.println(surroundCount);
-		if (isCell(h,w)) {
-			return surroundCount > 1 && surroundCount < 4;
-		} else {
-			return surroundCount == 3;
+	private boolean nearCell(boolean[] live, int tr, int tc) {
+		for (int r = Math.max(0, tr - 1); r <= Math.min(tileRows - 1, tr + 1); r++) {
+			for (int c = Math.max(0, tc - 1); c <= Math.min(tileCols - 1, tc + 1); c++) {
+				if (live[r * tileCols + c])
+					return true;
+			}
 		}
+		return false;
+	}
+
+	private void clearTile(Frame f, int t) {
+		int row0 = (t / tileCols) * TILE_ROWS, word0 = (t % tileCols) * TILE_WORDS;
+		int rowEnd = Math.min(rows, row0 + TILE_ROWS), wordEnd = Math.min(words, word0 + TILE_WORDS);
+		for (int i = row0; i < rowEnd; i++) {
+			for (int k = word0; k < wordEnd; k++) {
+				f.cells[i * words + k] = 0;
+			}
+		}
+		f.live[t] = false;
 	}
 
 	/**
-	 * Returns the count of the surrounding squares that are cells
-	 * @param h the vertical position on the board
-	 * @param w the horizontal position on the board
-	 * @return the count of the surrounding squares that are cells
-	 */
-	private int getSurroundCount(int h, int w) {
-		synchronized(this) {
-			//                System.out.println(field[h-1][w-1] + field[h-1][w] + field[h-1][w+1] + field[h][w-1] +
-			//				field[h][w+1] + field[h+1][w-1] + field[h+1][w] + field[h+1][w+1]);
-			return field[h-1][w-1] + field[h-1][w] + field[h-1][w+1] + field[h][w-1] +
-			field[h][w+1] + field[h+1][w-1] + field[h+1][w] + field[h+1][w+1];
+	 * Computes one tile of the next generation into dst.  The rows above and below the tile
+	 * and the words either side of it are read from src, which is not written during a
+	 * step, and only the tile's own words of dst are written.
+	 */
+	private void stepTile(Frame src, Frame dst, int t) {
+		long[] s = src.cells, d = dst.cells;
+		int row0 = (t / tileCols) * TILE_ROWS, word0 = (t % tileCols) * TILE_WORDS;
+		// the border rows stay dead
+		int rowStart = Math.max(1, row0), rowEnd = Math.min(rows - 1, row0 + TILE_ROWS);
+		int wordEnd = Math.min(words, word0 + TILE_WORDS);
+		long any = 0;
+		for (int i = rowStart; i < rowEnd; i++) {
+			int up = (i - 1) * words, mid = i * words, down = (i + 1) * words;
+			for (int k = word0; k < wordEnd; k++) {
+				long next = nextWord(
+						west(s, up, k), s[up + k], east(s, up, k),
+						west(s, mid, k), east(s, mid, k),
+						west(s, down, k), s[down + k], east(s, down, k),
+						s[mid + k]) & colMask[k];
+				d[mid + k] = next;
+				any |= next;
+			}
 		}
+		dst.live[t] = any != 0;
+	}
+
+	/**
+	 * Computes the tiles work[from] (inclusive) to work[to] (exclusive), splitting in half
+	 * while there are more than LEAF_TILES of them
+	 */
+	private class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Frame src, dst;
+		private final int from, to;
+
+		StepTask(Frame src, Frame dst, int from, int to) {
+			this.src = src;
+			this.dst = dst;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= LEAF_TILES) {
+				for (int n = from; n < to; n++) {
+					stepTile(src, dst, work[n]);
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new StepTask(src, dst, from, mid), new StepTask(src, dst, mid, to));
+		}
+	}
+
+	/**
+	 * Returns word k of the row starting at the given offset shifted so that each bit holds
+	 * its western neighbour.
+	 */
+	private long west(long[] src, int row, int k) {
+		long w = src[row + k] << 1;
+		if (k > 0)
+			w |= src[row + k - 1] >>> 63;
+		return w;
+	}
+
+	/**
+	 * Returns word k of the row starting at the given offset shifted so that each bit holds
+	 * its eastern neighbour.
+	 */
+	private long east(long[] src, int row, int k) {
+		long e = src[row + k] >>> 1;
+		if (k < words - 1)
+			e |= src[row + k + 1] << 63;
+		return e;
+	}
+
+	/**
+	 * Applies the rules of Life to 64 cells at once.  The eight neighbour words are summed
+	 * with bit-sliced adders into a ones, twos and fours bit per cell (a count of 8 wraps
+	 * to 0, which is dead either way), and a cell lives if the count is 3, or 2 and the
+	 * cell is already alive.
+	 * @return the word of the next generation
+	 */
+	static long nextWord(long a, long b, long c, long d, long e, long f, long g, long h,
+			long alive) {
+		// full adders over (a,b,c) and (d,e,f), half adder over (g,h)
+		long abc = a ^ b ^ c;
+		long abcCarry = (a & b) | (c & (a ^ b));
+		long def = d ^ e ^ f;
+		long defCarry = (d & e) | (f & (d ^ e));
+		long gh = g ^ h;
+		long ghCarry = g & h;
+		// ones column
+		long ones = abc ^ def ^ gh;
+		long onesCarry = (abc & def) | (gh & (abc ^ def));
+		// twos column (four inputs), carrying into fours
+		long x1 = abcCarry ^ defCarry;
+		long x2 = ghCarry ^ onesCarry;
+		long twos = x1 ^ x2;
+		long fours = (abcCarry & defCarry) ^ (ghCarry & onesCarry) ^ (x1 & x2);
+		return twos & ~fours & (ones | alive);
 	}
 
 	/**
@@ -243,7 +467,7 @@ class GameOfLife implements Animatable {
 			else if (boxSize < o.boxSize)
 				return -1;
 			else
-				return (randIndex > o.randIndex) ? 1 : (randIndex < o.randIndex) ? -1 : 0;
+				return (id > o.id) ? 1 : (id < o.id) ? -1 : 0;
 		} else {
 			return getClass().getName().compareTo(other.getClass().getName());
 		}
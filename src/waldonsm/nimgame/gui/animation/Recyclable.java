@@ -0,0 +1,19 @@
+package waldonsm.nimgame.gui.animation;
+
+/**
+ * An Animatable that can be reused once its AnimationScope has retired it.  The scope
+ * calls recycle after removing the animation and submitting its done runnable, and does
+ * not touch it again.
+ * @author Shawn Waldon
+ *
+ */
+public interface Recyclable {
+
+	/**
+	 * Returns the animation to wherever it is reused from.  It may still be drawn by a
+	 * paint that was already running when it was retired, so it must stay in its done
+	 * state until it is reused.
+	 */
+	void recycle();
+
+}
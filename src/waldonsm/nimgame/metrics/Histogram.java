@@ -0,0 +1,108 @@
+package waldonsm.nimgame.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values (usually nanoseconds).  Values are
+ * counted in log-scale buckets, four per power of two, so recording is a couple of atomic
+ * increments and the percentiles it reports are within 25% of the real value.
+ * @author Shawn Waldon
+ *
+ */
+public final class Histogram {
+
+	/**
+	 * Values below 4 get a bucket each, every power of two above that gets 4 buckets
+	 */
+	private static final int BUCKETS = 4 * 63;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one value, negative values are counted as 0
+	 * @param value the value to record
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long m = max.get();
+		while (value > m && !max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Clears everything recorded so far.  Values recorded while the reset is happening may
+	 * or may not survive it.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Returns a snapshot of the histogram's count, mean, max and percentiles
+	 * @return a snapshot of the histogram
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] c = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			c[i] = counts.get(i);
+			total += c[i];
+		}
+		long m = max.get();
+		double mean = (total == 0) ? 0 : (double) sum.get() / total;
+		return new HistogramSnapshot(total, mean, percentile(c, total, m, 0.5),
+				percentile(c, total, m, 0.9), percentile(c, total, m, 0.99), m);
+	}
+
+	/**
+	 * Returns the upper bound of the bucket holding the given fraction of the values (capped
+	 * at the max, which is exact)
+	 */
+	private static long percentile(long[] c, long total, long max, double fraction) {
+		if (total == 0)
+			return 0;
+		long target = (long) Math.ceil(fraction * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += c[i];
+			if (seen >= target) {
+				return Math.min(upperBoundOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	private static int bucketOf(long value) {
+		if (value < 4)
+			return (int) value;
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (msb - 2)) & 3;
+		return 4 * (msb - 1) + sub;
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket < 4)
+			return bucket;
+		int msb = bucket / 4 + 1;
+		int sub = bucket % 4;
+		if (msb == 62 && sub == 3 || msb > 62)
+			return Long.MAX_VALUE;
+		return ((5L + sub) << (msb - 2)) - 1;
+	}
+
+}
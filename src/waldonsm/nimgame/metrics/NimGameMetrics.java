@@ -0,0 +1,164 @@
+package waldonsm.nimgame.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The animation and turn loop metrics of the NimGame GUI.  Like the AnimationRunner it is
+ * an enum because there is only ever one of them.  Recording is cheap (a few atomic adds)
+ * so it is always on; register publishes it over JMX as
+ * "waldonsm.nimgame:type=NimGameMetrics".
+ * @author Shawn Waldon
+ *
+ */
+public enum NimGameMetrics implements NimGameMetricsMXBean {
+
+	METRICS;
+
+	public static final String OBJECT_NAME = "waldonsm.nimgame:type=NimGameMetrics";
+
+	private final Histogram tick = new Histogram();
+	private final Histogram frameInterval = new Histogram();
+	private final Histogram postToPaint = new Histogram();
+	private final Histogram paint = new Histogram();
+	private final Histogram active = new Histogram();
+	private final Histogram ai = new Histogram();
+	private final Histogram searchRate = new Histogram();
+	private volatile int currentAnimatables;
+	/**
+	 * The nanoTime of the oldest repaint posted since the last paint started, 0 if none
+	 */
+	private final AtomicLong postedAt = new AtomicLong();
+	private boolean registered;
+
+	/**
+	 * Registers the metrics with the platform MBean server if this has not already been
+	 * done.  Failing to register is not fatal, the metrics are still recorded and can be
+	 * shown on the panel overlay.
+	 */
+	public static void register() {
+		synchronized(NimGameMetrics.class) {
+			if (METRICS.registered)
+				return;
+			METRICS.registered = true;
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				server.registerMBean(METRICS, new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				System.err.println("Could not register " + OBJECT_NAME + ": " + e);
+			} catch (SecurityException e) {
+				System.err.println("Could not register " + OBJECT_NAME + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Records one AnimationRunner tick
+	 * @param start the nanoTime the tick started
+	 * @param end the nanoTime the tick ended
+	 * @param lastStart the nanoTime the previous tick started, 0 if the runner was idle
+	 * @param animatables the number of Animatables the tick animated
+	 */
+	public void tick(long start, long end, long lastStart, int animatables) {
+		tick.record(end - start);
+		if (lastStart != 0) {
+			frameInterval.record(start - lastStart);
+		}
+		active.record(animatables);
+		currentAnimatables = animatables;
+	}
+
+	/**
+	 * Records that a repaint has been posted to the EDT
+	 * @param when the nanoTime it was posted
+	 */
+	public void paintPosted(long when) {
+		postedAt.compareAndSet(0, when == 0 ? 1 : when);
+	}
+
+	/**
+	 * Records the start of a paint, ending the wait of the last posted repaint
+	 * @param when the nanoTime the paint started
+	 */
+	public void paintStarted(long when) {
+		long posted = postedAt.getAndSet(0);
+		if (posted != 0) {
+			postToPaint.record(when - posted);
+		}
+	}
+
+	/**
+	 * Records a finished paint
+	 * @param start the nanoTime the paint started
+	 * @param end the nanoTime the paint ended
+	 */
+	public void paintDone(long start, long end) {
+		paint.record(end - start);
+	}
+
+	/**
+	 * Records one call to the AI, timed on the thread that made it
+	 * @param nanos how long the AI took to choose
+	 */
+	public void aiChose(long nanos) {
+		ai.record(nanos);
+	}
+
+	/**
+	 * Records one search of a SearchAI
+	 * @param nodes the number of nodes it visited
+	 * @param nanos how long it took
+	 */
+	public void aiSearched(long nodes, long nanos) {
+		if (nanos > 0) {
+			searchRate.record((long) (nodes * 1e9 / nanos));
+		}
+	}
+
+	public HistogramSnapshot getTickNanos() {
+		return tick.snapshot();
+	}
+
+	public HistogramSnapshot getFrameIntervalNanos() {
+		return frameInterval.snapshot();
+	}
+
+	public HistogramSnapshot getPostToPaintNanos() {
+		return postToPaint.snapshot();
+	}
+
+	public HistogramSnapshot getPaintNanos() {
+		return paint.snapshot();
+	}
+
+	public HistogramSnapshot getActiveAnimatables() {
+		return active.snapshot();
+	}
+
+	public HistogramSnapshot getAINanos() {
+		return ai.snapshot();
+	}
+
+	public HistogramSnapshot getSearchNodesPerSecond() {
+		return searchRate.snapshot();
+	}
+
+	public int getCurrentAnimatables() {
+		return currentAnimatables;
+	}
+
+	public void reset() {
+		tick.reset();
+		frameInterval.reset();
+		postToPaint.reset();
+		paint.reset();
+		active.reset();
+		ai.reset();
+		searchRate.reset();
+	}
+
+}
@@ -0,0 +1,57 @@
+package waldonsm.nimgame.metrics;
+
+/**
+ * The JMX view of NimGameMetrics.  All the times are in nanoseconds.
+ * @author Shawn Waldon
+ *
+ */
+public interface NimGameMetricsMXBean {
+
+	/**
+	 * @return how long each AnimationRunner tick took
+	 */
+	HistogramSnapshot getTickNanos();
+
+	/**
+	 * @return the time from the start of one tick to the start of the next, not counting the
+	 * time the runner spent parked with nothing to animate
+	 */
+	HistogramSnapshot getFrameIntervalNanos();
+
+	/**
+	 * @return the time from the AnimationRunner posting a repaint to the EDT to the start of
+	 * the paintComponent that handles it, which grows when the EDT is backed up
+	 */
+	HistogramSnapshot getPostToPaintNanos();
+
+	/**
+	 * @return how long NimGamePanel.paintComponent took
+	 */
+	HistogramSnapshot getPaintNanos();
+
+	/**
+	 * @return the number of Animatables animated by each tick
+	 */
+	HistogramSnapshot getActiveAnimatables();
+
+	/**
+	 * @return how long the AI's chooseNumToTake took
+	 */
+	HistogramSnapshot getAINanos();
+
+	/**
+	 * @return the nodes per second of each SearchAI search
+	 */
+	HistogramSnapshot getSearchNodesPerSecond();
+
+	/**
+	 * @return the number of Animatables animated by the last tick
+	 */
+	int getCurrentAnimatables();
+
+	/**
+	 * Clears all the histograms
+	 */
+	void reset();
+
+}
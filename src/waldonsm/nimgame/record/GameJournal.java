@@ -0,0 +1,203 @@
+package waldonsm.nimgame.record;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An append-only file of game records.  Games are written as they are played, one entry
+ * when a game starts and one per thing taken, into a buffer that goes to the file through
+ * its FileChannel when it fills up (a few thousand takes at a time), on flush and on close.
+ * <P>
+ * The file starts with the magic number "NIMJ" and a version byte, followed by entries,
+ * each a tag byte and varints (see Varint):
+ * <PRE>
+ * game start   tag 0 | 4 if the last taken loses | 8 if the player goes first,
+ *              number of things, maximum takable, start time (ms since the epoch)
+ * take         tag 1 (player) or 2 (AI), index of the thing taken,
+ *              ms since the previous entry of the game
+ * </PRE>
+ * A typical take is three or four bytes.  Part of an entry at the end of the file (from a
+ * crash in the middle of a write) is cut off when the journal is opened again; a journal
+ * with an entry that makes no sense before its end is not opened, and is left as it is.
+ * <P>
+ * A journal records one game at a time, so each NimGamePanel recording games needs a
+ * journal of its own.  Thread safe.
+ * @author Shawn Waldon
+ *
+ */
+public final class GameJournal implements Closeable, Flushable {
+
+	/**
+	 * "NIMJ"
+	 */
+	public static final int MAGIC = 0x4E494D4A;
+	public static final byte VERSION = 1;
+	static final int HEADER_SIZE = 5;
+
+	static final int TAG_GAME = 0, TAG_PLAYER = 1, TAG_AI = 2;
+	static final int TAG_TYPE = 3, FLAG_LAST_TAKEN_LOSES = 4, FLAG_PLAYER_FIRST = 8;
+	/**
+	 * The most bytes an entry can take
+	 */
+	static final int MAX_ENTRY = 1 + 2 * 5 + Varint.MAX_LONG_BYTES;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	/**
+	 * The time of the last entry of the current game, -1 if no game has been started
+	 */
+	private long lastMillis = -1;
+
+	private GameJournal(RandomAccessFile file) {
+		this.file = file;
+		channel = file.getChannel();
+	}
+
+	/**
+	 * Opens a journal for appending, creating it if it does not exist
+	 * @param file the journal file
+	 * @return the journal
+	 * @throws IOException if the file cannot be opened, is not a journal or is corrupt
+	 */
+	public static GameJournal open(File file) throws IOException {
+		GameJournal journal = new GameJournal(new RandomAccessFile(file, "rw"));
+		boolean ok = false;
+		try {
+			FileChannel channel = journal.channel;
+			if (channel.size() == 0) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).put(VERSION).flip();
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+			} else {
+				GameJournalReader reader = new GameJournalReader(channel, file);
+				while (reader.read() != null) {
+					// just finding where the last complete entry ends
+				}
+				if (reader.isTruncated()) {
+					channel.truncate(reader.getValidLength());
+				}
+			}
+			channel.position(channel.size());
+			ok = true;
+			return journal;
+		} finally {
+			if (!ok)
+				journal.file.close();
+		}
+	}
+
+	/**
+	 * Starts recording a new game, timed from now
+	 * @param numThings the number of things in the pile to start with
+	 * @param maxNumTakable the maximum number of things that may be taken in one turn
+	 * @param lastTakenLoses true if the player who takes the last thing loses
+	 * @param playerGoesFirst true if the player moves first
+	 * @throws IOException if the buffer could not be written
+	 */
+	public synchronized void startGame(int numThings, int maxNumTakable, boolean lastTakenLoses,
+			boolean playerGoesFirst) throws IOException {
+		startGame(numThings, maxNumTakable, lastTakenLoses, playerGoesFirst, System.currentTimeMillis());
+	}
+
+	private void startGame(int numThings, int maxNumTakable, boolean lastTakenLoses,
+			boolean playerGoesFirst, long startMillis) throws IOException {
+		if (numThings < 0 || maxNumTakable <= 0 || startMillis < 0)
+			throw new IllegalArgumentException();
+		reserve();
+		buffer.put((byte) (TAG_GAME | (lastTakenLoses ? FLAG_LAST_TAKEN_LOSES : 0)
+				| (playerGoesFirst ? FLAG_PLAYER_FIRST : 0)));
+		Varint.put(buffer, numThings);
+		Varint.put(buffer, maxNumTakable);
+		Varint.put(buffer, startMillis);
+		lastMillis = startMillis;
+	}
+
+	/**
+	 * Records a thing taken in the current game, timed now
+	 * @param index the index of the thing in the pile
+	 * @param mover who took it
+	 * @throws IOException if the buffer could not be written
+	 */
+	public synchronized void take(int index, GameRecord.Mover mover) throws IOException {
+		take(index, mover, Math.max(lastMillis, System.currentTimeMillis()));
+	}
+
+	private void take(int index, GameRecord.Mover mover, long millis) throws IOException {
+		if (lastMillis < 0)
+			throw new IllegalStateException("No game started");
+		if (index < 0)
+			throw new IllegalArgumentException("negative index: " + index);
+		reserve();
+		buffer.put((byte) (mover == GameRecord.Mover.AI ? TAG_AI : TAG_PLAYER));
+		Varint.put(buffer, index);
+		Varint.put(buffer, millis - lastMillis);
+		lastMillis = millis;
+	}
+
+	/**
+	 * Appends a whole game, for example one read from another journal
+	 * @param record the game
+	 * @throws IOException if the buffer could not be written
+	 */
+	public synchronized void append(GameRecord record) throws IOException {
+		startGame(record.getNumThings(), record.getMaxNumTakable(), record.isLastTakenLoses(),
+				record.isPlayerGoesFirst(), record.getStartMillis());
+		long last = 0;
+		for (int i = 0; i < record.getTakeCount(); i++) {
+			// times must not go backwards, the deltas are unsigned
+			last = Math.max(last, record.getTime(i));
+			take(record.getTake(i), record.getMover(i), record.getStartMillis() + last);
+		}
+	}
+
+	/**
+	 * Makes room for an entry, writing out the buffer if it is nearly full
+	 */
+	private void reserve() throws IOException {
+		if (!channel.isOpen())
+			throw new IOException("Journal is closed");
+		if (buffer.remaining() < MAX_ENTRY) {
+			writeBuffer();
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes everything recorded so far to the file
+	 */
+	public synchronized void flush() throws IOException {
+		if (channel.isOpen()) {
+			writeBuffer();
+		}
+	}
+
+	/**
+	 * Flushes and closes the journal
+	 */
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen())
+			return;
+		try {
+			writeBuffer();
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package waldonsm.nimgame.record;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the games of a GameJournal back, in the order they were played.  The file is read
+ * through one reused buffer, so a journal of any size can be read in constant memory.
+ * <P>
+ * A journal whose writer crashed may end in part of an entry; reading stops cleanly at the
+ * last complete entry (the game it was part of is returned with the takes that were
+ * complete), isTruncated is then true and getValidLength tells where that entry ends.  An
+ * entry that makes no sense, anywhere else, is not taken for the end of the journal: read
+ * throws an IOException saying where it is, so the games after it are not lost.
+ * @author Shawn Waldon
+ *
+ */
+public final class GameJournalReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final RandomAccessFile file;
+	private final File name;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	/**
+	 * The file position of the start of the buffer
+	 */
+	private long bufferStart;
+	private boolean eof;
+	private long validLength;
+	private boolean done, truncated;
+
+	/**
+	 * The game entry read ahead of the game being returned
+	 */
+	private boolean havePending;
+	private int pendingThings, pendingMax, pendingTag;
+	private long pendingStart;
+	/**
+	 * The time since the previous entry and the mover of the take last read
+	 */
+	private long lastDelta;
+	private boolean lastAI;
+
+	private int[] takes = new int[64];
+	private boolean[] byAI = new boolean[64];
+	private long[] times = new long[64];
+
+	/**
+	 * Opens a journal for reading
+	 * @param file the journal file
+	 * @throws IOException if the file cannot be read or is not a journal of this version
+	 */
+	public GameJournalReader(File file) throws IOException {
+		this(new RandomAccessFile(file, "r"), file);
+	}
+
+	private GameJournalReader(RandomAccessFile raf, File name) throws IOException {
+		file = raf;
+		channel = raf.getChannel();
+		this.name = name;
+		boolean ok = false;
+		try {
+			readHeader(name);
+			ok = true;
+		} finally {
+			if (!ok)
+				raf.close();
+		}
+	}
+
+	/**
+	 * Creates a reader of a channel opened by someone else, which close leaves open
+	 */
+	GameJournalReader(FileChannel channel, File name) throws IOException {
+		file = null;
+		this.channel = channel;
+		this.name = name;
+		readHeader(name);
+	}
+
+	private void readHeader(File name) throws IOException {
+		buffer.limit(0);
+		fill();
+		if (buffer.remaining() < GameJournal.HEADER_SIZE || buffer.getInt() != GameJournal.MAGIC)
+			throw new IOException(name + " is not a game journal");
+		byte version = buffer.get();
+		if (version != GameJournal.VERSION)
+			throw new IOException(name + " is game journal version " + version + ", not " + GameJournal.VERSION);
+		validLength = GameJournal.HEADER_SIZE;
+	}
+
+	/**
+	 * Reads more of the file after what is left in the buffer
+	 */
+	private void fill() throws IOException {
+		bufferStart += buffer.position();
+		buffer.compact();
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, bufferStart + buffer.position());
+			if (n < 0) {
+				eof = true;
+				break;
+			}
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Returns the next game
+	 * @return the game, or null at the end of the journal
+	 * @throws IOException if the file cannot be read, or holds an entry that makes no sense
+	 * before its end
+	 */
+	public GameRecord read() throws IOException {
+		if (!havePending && !done) {
+			long start = validLength;
+			if (readEntry() >= 0)
+				throw corrupt(start, "a take with no game before it");
+		}
+		if (!havePending)
+			return null;
+		havePending = false;
+		int things = pendingThings, max = pendingMax, tag = pendingTag;
+		long start = pendingStart;
+		int count = 0;
+		long time = 0;
+		while (!done) {
+			long index = readEntry();
+			if (index < 0)
+				break;
+			if (count == takes.length) {
+				takes = Arrays.copyOf(takes, 2 * count);
+				byAI = Arrays.copyOf(byAI, 2 * count);
+				times = Arrays.copyOf(times, 2 * count);
+			}
+			time += lastDelta;
+			takes[count] = (int) index;
+			byAI[count] = lastAI;
+			times[count] = time;
+			count++;
+		}
+		return new GameRecord(things, max, (tag & GameJournal.FLAG_LAST_TAKEN_LOSES) != 0,
+				(tag & GameJournal.FLAG_PLAYER_FIRST) != 0, start,
+				Arrays.copyOf(takes, count), Arrays.copyOf(byAI, count), Arrays.copyOf(times, count), count);
+	}
+
+	/**
+	 * Reads one entry.  A take is returned as its index, with its time and mover left in
+	 * lastDelta and lastAI.  A game is kept as the pending one and -1 returned, and -1 is
+	 * also returned (with done set) at the end of the file or at part of an entry there.
+	 */
+	private long readEntry() throws IOException {
+		if (done)
+			return -1;
+		if (buffer.remaining() < GameJournal.MAX_ENTRY && !eof) {
+			fill();
+		}
+		if (!buffer.hasRemaining()) {
+			done = true;
+			return -1;
+		}
+		long position = bufferStart + buffer.position();
+		try {
+			int tag = buffer.get() & 0xFF;
+			int type = tag & GameJournal.TAG_TYPE;
+			if (type == GameJournal.TAG_GAME && (tag & ~0xF) == 0) {
+				int things = Varint.getInt(buffer);
+				int max = Varint.getInt(buffer);
+				long start = Varint.get(buffer);
+				if (max > 0 && start >= 0) {
+					pendingThings = things;
+					pendingMax = max;
+					pendingTag = tag;
+					pendingStart = start;
+					havePending = true;
+					validLength = bufferStart + buffer.position();
+					return -1;
+				}
+				throw corrupt(position, "a game with bad parameters");
+			} else if ((type == GameJournal.TAG_PLAYER || type == GameJournal.TAG_AI) && tag == type) {
+				int index = Varint.getInt(buffer);
+				long delta = Varint.get(buffer);
+				if (delta >= 0) {
+					lastDelta = delta;
+					lastAI = (type == GameJournal.TAG_AI);
+					validLength = bufferStart + buffer.position();
+					return index;
+				}
+				throw corrupt(position, "a take with a bad time");
+			} else {
+				throw corrupt(position, "a bad tag " + tag);
+			}
+		} catch (BufferUnderflowException e) {
+			// the buffer holds all the rest of the file once eof is set, so an entry running
+			// past it was cut short, otherwise it is too long to be an entry
+			if (!eof)
+				throw corrupt(position, "an entry that is too long");
+			truncated = true;
+			done = true;
+			return -1;
+		} catch (IllegalArgumentException e) {
+			throw corrupt(position, "a bad number");
+		}
+	}
+
+	private IOException corrupt(long position, String what) {
+		done = true;
+		return new IOException(name + " is corrupt: " + what + " at byte " + position);
+	}
+
+	/**
+	 * Returns true if the end of the journal has been reached and it ends in part of an entry
+	 * @return true if the journal was cut short
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Returns the length of the journal up to the end of the last complete entry read, which
+	 * is the length of the file once the end has been reached, unless it was cut short
+	 * @return the length in bytes
+	 */
+	public long getValidLength() {
+		return validLength;
+	}
+
+	/**
+	 * Closes the file
+	 */
+	public void close() throws IOException {
+		if (file != null)
+			file.close();
+	}
+}
@@ -0,0 +1,144 @@
+package waldonsm.nimgame.record;
+
+import java.util.Arrays;
+
+/**
+ * One recorded game: the parameters it was started with and every thing taken, in order,
+ * with who took it and when.  Immutable.
+ * @author Shawn Waldon
+ *
+ */
+public final class GameRecord {
+
+	/**
+	 * Who took a thing
+	 */
+	public enum Mover {PLAYER, AI}
+
+	private final int numThings;
+	private final int maxNumTakable;
+	private final boolean lastTakenLoses;
+	private final boolean playerGoesFirst;
+	private final long startMillis;
+	private final int[] takes;
+	private final boolean[] byAI;
+	private final long[] times;
+
+	/**
+	 * Creates a record
+	 * @param numThings the number of things in the pile to start with
+	 * @param maxNumTakable the maximum number of things that may be taken in one turn
+	 * @param lastTakenLoses true if the player who takes the last thing loses
+	 * @param playerGoesFirst true if the player moved first
+	 * @param startMillis when the game started (System.currentTimeMillis)
+	 * @param takes the index of each thing taken, in order
+	 * @param byAI for each take, true if the AI took it
+	 * @param times for each take, the milliseconds since the start of the game
+	 */
+	public GameRecord(int numThings, int maxNumTakable, boolean lastTakenLoses, boolean playerGoesFirst,
+			long startMillis, int[] takes, boolean[] byAI, long[] times) {
+		this(numThings, maxNumTakable, lastTakenLoses, playerGoesFirst, startMillis,
+				takes.clone(), byAI.clone(), times.clone(), takes.length);
+	}
+
+	/**
+	 * Creates a record from the first count entries of the arrays, which it keeps (trimmed)
+	 */
+	GameRecord(int numThings, int maxNumTakable, boolean lastTakenLoses, boolean playerGoesFirst,
+			long startMillis, int[] takes, boolean[] byAI, long[] times, int count) {
+		if (numThings < 0 || maxNumTakable <= 0)
+			throw new IllegalArgumentException();
+		if (byAI.length < count || times.length < count)
+			throw new IllegalArgumentException("takes, byAI and times must be the same length");
+		this.numThings = numThings;
+		this.maxNumTakable = maxNumTakable;
+		this.lastTakenLoses = lastTakenLoses;
+		this.playerGoesFirst = playerGoesFirst;
+		this.startMillis = startMillis;
+		this.takes = (takes.length == count) ? takes : Arrays.copyOf(takes, count);
+		this.byAI = (byAI.length == count) ? byAI : Arrays.copyOf(byAI, count);
+		this.times = (times.length == count) ? times : Arrays.copyOf(times, count);
+	}
+
+	/**
+	 * Returns the number of things in the pile to start with
+	 * @return the number of things in the pile to start with
+	 */
+	public int getNumThings() {
+		return numThings;
+	}
+
+	/**
+	 * Returns the maximum number of things that may be taken in one turn
+	 * @return the maximum number of things that may be taken in one turn
+	 */
+	public int getMaxNumTakable() {
+		return maxNumTakable;
+	}
+
+	/**
+	 * Returns true if the player who takes the last thing loses
+	 * @return true if the player who takes the last thing loses
+	 */
+	public boolean isLastTakenLoses() {
+		return lastTakenLoses;
+	}
+
+	/**
+	 * Returns true if the player moved first, false if the AI did
+	 * @return true if the player moved first, false if the AI did
+	 */
+	public boolean isPlayerGoesFirst() {
+		return playerGoesFirst;
+	}
+
+	/**
+	 * Returns when the game started
+	 * @return the start time in milliseconds since the epoch
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * Returns the number of things taken
+	 * @return the number of takes recorded
+	 */
+	public int getTakeCount() {
+		return takes.length;
+	}
+
+	/**
+	 * Returns the index of the i-th thing taken
+	 * @param i the number of the take, from 0
+	 * @return the index of the thing in the pile
+	 */
+	public int getTake(int i) {
+		return takes[i];
+	}
+
+	/**
+	 * Returns who made the i-th take
+	 * @param i the number of the take, from 0
+	 * @return the mover
+	 */
+	public Mover getMover(int i) {
+		return byAI[i] ? Mover.AI : Mover.PLAYER;
+	}
+
+	/**
+	 * Returns when the i-th take was made
+	 * @param i the number of the take, from 0
+	 * @return the milliseconds since the start of the game
+	 */
+	public long getTime(int i) {
+		return times[i];
+	}
+
+	@Override
+	public String toString() {
+		return "Game of " + numThings + " taking up to " + maxNumTakable
+				+ (lastTakenLoses ? ", last taken loses, " : ", last taken wins, ")
+				+ (playerGoesFirst ? "player first, " : "AI first, ") + takes.length + " takes";
+	}
+}
@@ -0,0 +1,175 @@
+package waldonsm.nimgame.record;
+
+import java.io.File;
+import java.io.IOException;
+
+import waldonsm.nimgame.game.PieceIndex;
+
+/**
+ * Replays recorded games without a display, as fast as they can be read: each take is
+ * played on a PieceIndex, as the panel does, and checked against the rules, and the
+ * outcome of each game is counted.  To watch a game instead, give it to
+ * NimGamePanel.replay.
+ * <P>
+ * Usage: GameReplay journal...
+ * @author Shawn Waldon
+ *
+ */
+public final class GameReplay {
+
+	/**
+	 * How a recorded game ended
+	 */
+	public enum Outcome {
+		PLAYER_WON, AI_WON,
+		/**
+		 * Things were left when the record ends
+		 */
+		UNFINISHED,
+		/**
+		 * A take was not allowed: a thing that was not there, a mover out of turn or too
+		 * many things in one turn
+		 */
+		ILLEGAL
+	}
+
+	/**
+	 * The totals of replaying a journal.  Immutable.
+	 */
+	public static final class Summary {
+		private final long[] counts;
+		private final long takes;
+		private final long nanos;
+
+		Summary(long[] counts, long takes, long nanos) {
+			this.counts = counts.clone();
+			this.takes = takes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Returns the number of games that ended a given way
+		 * @param outcome the way
+		 * @return the number of games
+		 */
+		public long getCount(Outcome outcome) {
+			return counts[outcome.ordinal()];
+		}
+
+		/**
+		 * Returns the number of games replayed
+		 * @return the number of games
+		 */
+		public long getGames() {
+			long games = 0;
+			for (long c: counts) {
+				games += c;
+			}
+			return games;
+		}
+
+		/**
+		 * Returns the number of takes replayed
+		 * @return the number of takes
+		 */
+		public long getTakes() {
+			return takes;
+		}
+
+		/**
+		 * Returns how long reading and replaying took
+		 * @return the time in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns the number of games replayed per second
+		 * @return the games per second
+		 */
+		public double getGamesPerSecond() {
+			return (nanos == 0) ? 0 : getGames() * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			s.append(getGames()).append(" games, ").append(takes).append(" takes in ")
+					.append(nanos / 1000000).append(" ms (").append(Math.round(getGamesPerSecond()))
+					.append(" games/s):");
+			for (Outcome o: Outcome.values()) {
+				s.append(' ').append(o).append(' ').append(counts[o.ordinal()]);
+			}
+			return s.toString();
+		}
+	}
+
+	private GameReplay() {
+	}
+
+	/**
+	 * Replays a game and returns how it ended
+	 * @param record the game
+	 * @return the outcome
+	 */
+	public static Outcome check(GameRecord record) {
+		PieceIndex pieces = new PieceIndex(record.getNumThings());
+		GameRecord.Mover turn = record.isPlayerGoesFirst() ? GameRecord.Mover.PLAYER : GameRecord.Mover.AI;
+		int takenThisTurn = 0;
+		for (int i = 0; i < record.getTakeCount(); i++) {
+			GameRecord.Mover mover = record.getMover(i);
+			if (mover != turn) {
+				// the turn passes after at least one thing is taken
+				if (takenThisTurn == 0)
+					return Outcome.ILLEGAL;
+				turn = mover;
+				takenThisTurn = 0;
+			}
+			int index = record.getTake(i);
+			if (index >= pieces.size() || !pieces.take(index) || ++takenThisTurn > record.getMaxNumTakable())
+				return Outcome.ILLEGAL;
+		}
+		if (pieces.getNumLeft() > 0 || record.getTakeCount() == 0)
+			return Outcome.UNFINISHED;
+		boolean playerTookLast = (turn == GameRecord.Mover.PLAYER);
+		return (playerTookLast != record.isLastTakenLoses()) ? Outcome.PLAYER_WON : Outcome.AI_WON;
+	}
+
+	/**
+	 * Replays every game of a journal
+	 * @param journal the journal file
+	 * @return the totals
+	 * @throws IOException if the journal cannot be read
+	 */
+	public static Summary replayAll(File journal) throws IOException {
+		long start = System.nanoTime();
+		long[] counts = new long[Outcome.values().length];
+		long takes = 0;
+		GameJournalReader reader = new GameJournalReader(journal);
+		try {
+			GameRecord record;
+			while ((record = reader.read()) != null) {
+				counts[check(record).ordinal()]++;
+				takes += record.getTakeCount();
+			}
+		} finally {
+			reader.close();
+		}
+		return new Summary(counts, takes, System.nanoTime() - start);
+	}
+
+	/**
+	 * Replays the journals named on the command line and prints their totals
+	 * @param args the journal files
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: GameReplay journal...");
+			System.exit(1);
+		}
+		for (String name: args) {
+			System.out.println(name + ": " + replayAll(new File(name)));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package waldonsm.nimgame.record;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unsigned LEB128 varints: seven bits per byte, least significant first, the top bit set
+ * on every byte but the last.  Numbers under 128 take one byte.
+ * @author Shawn Waldon
+ *
+ */
+final class Varint {
+
+	/**
+	 * The most bytes a long can take
+	 */
+	static final int MAX_LONG_BYTES = 10;
+
+	private Varint() {
+	}
+
+	/**
+	 * Writes a number, treated as unsigned
+	 */
+	static void put(ByteBuffer b, long value) {
+		while ((value & ~0x7FL) != 0) {
+			b.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		b.put((byte) value);
+	}
+
+	/**
+	 * Reads a number
+	 * @throws java.nio.BufferUnderflowException if the buffer ends inside the number
+	 * @throws IllegalArgumentException if the number is longer than a long
+	 */
+	static long get(ByteBuffer b) {
+		long value = 0;
+		for (int shift = 0; shift < 7 * MAX_LONG_BYTES; shift += 7) {
+			byte v = b.get();
+			value |= (long) (v & 0x7F) << shift;
+			if (v >= 0)
+				return value;
+		}
+		throw new IllegalArgumentException("varint too long");
+	}
+
+	/**
+	 * Reads a number that must fit in a non-negative int
+	 */
+	static int getInt(ByteBuffer b) {
+		long v = get(b);
+		if (v < 0 || v > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("varint out of range: " + v);
+		return (int) v;
+	}
+}
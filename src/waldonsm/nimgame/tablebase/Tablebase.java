@@ -0,0 +1,278 @@
+package waldonsm.nimgame.tablebase;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import waldonsm.nimgame.game.GrundyTable;
+import waldonsm.nimgame.game.HeapValues;
+import waldonsm.nimgame.game.SubtractionSet;
+
+/**
+ * A tablebase file: the Grundy values and misere outcomes of every heap up to some size for
+ * a number of subtraction sets, written by TablebaseGenerator.
+ * <P>
+ * Opening a tablebase only reads its header and index.  The values of a subtraction set
+ * are memory mapped the first time the set is looked up, and are then read straight from
+ * the mapping, so they cost no heap and are paged in by the OS as they are used.  Heaps
+ * larger than the file covers are answered by a GrundyTable, made when first needed.
+ * <P>
+ * The file is big-endian:
+ * <PRE>
+ * header   int magic ("NIMT"), short version, short header size, int table count,
+ *          int index size, long file length, 8 bytes reserved
+ * index    for each table: int max move, int move count (0 for the range 1 to max),
+ *          the moves (ints), int heap count, byte bits per Grundy value, 3 bytes
+ *          reserved, long offset of the table data
+ * data     for each table: the Grundy values of heaps 0 to heap count - 1, each in
+ *          "bits" bits, then one misere bit per heap (set for a win), packed most
+ *          significant bit first and each padded to a multiple of 8 bytes, plus 8
+ * </PRE>
+ * Thread safe.
+ * @author Shawn Waldon
+ *
+ */
+public final class Tablebase implements Closeable {
+
+	/**
+	 * "NIMT"
+	 */
+	public static final int MAGIC = 0x4E494D54;
+	/**
+	 * The version of the file format written by TablebaseGenerator
+	 */
+	public static final short VERSION = 1;
+	static final short HEADER_SIZE = 32;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final Map<SubtractionSet, Table> tables;
+
+	private Tablebase(File file, RandomAccessFile raf, Map<SubtractionSet, Table> tables) {
+		this.file = file;
+		this.raf = raf;
+		this.tables = tables;
+	}
+
+	/**
+	 * Opens a tablebase file, reading its index
+	 * @param file the file
+	 * @return the tablebase
+	 * @throws IOException if the file cannot be read or is not a tablebase of this version
+	 */
+	public static Tablebase open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		boolean ok = false;
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException(file + " is not a tablebase");
+			ByteBuffer header = read(channel, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a tablebase");
+			short version = header.getShort();
+			if (version != VERSION)
+				throw new IOException(file + " is tablebase version " + version + ", not " + VERSION);
+			int headerSize = header.getShort();
+			int count = header.getInt();
+			int indexSize = header.getInt();
+			long length = header.getLong();
+			if (length != channel.size())
+				throw new IOException(file + " is " + channel.size() + " bytes, not " + length);
+			ByteBuffer index = read(channel, headerSize, indexSize);
+			Map<SubtractionSet, Table> tables = new HashMap<SubtractionSet, Table>();
+			for (int i = 0; i < count; i++) {
+				int max = index.getInt();
+				int n = index.getInt();
+				SubtractionSet moves;
+				if (n == 0) {
+					moves = SubtractionSet.upTo(max);
+				} else {
+					int[] m = new int[n];
+					for (int k = 0; k < n; k++) {
+						m[k] = index.getInt();
+					}
+					moves = SubtractionSet.of(m);
+				}
+				int heaps = index.getInt();
+				int bits = index.get();
+				index.position(index.position() + 3);
+				long offset = index.getLong();
+				if (heaps < 0 || bits < 1 || bits > 32 || offset < 0
+						|| offset + regionSize(heaps, bits) > length)
+					throw new IOException(file + " has a bad index entry for " + moves);
+				tables.put(moves, new Table(channel, moves, heaps, bits, offset));
+			}
+			ok = true;
+			return new Tablebase(file, raf, tables);
+		} catch (RuntimeException e) {
+			throw new IOException(file + " has a bad index", e);
+		} finally {
+			if (!ok)
+				raf.close();
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(size);
+		while (b.hasRemaining()) {
+			if (channel.read(b, position + b.position()) < 0)
+				throw new EOFException();
+		}
+		b.flip();
+		return b;
+	}
+
+	/**
+	 * Returns the number of bytes of Grundy values of a table, the misere bits following
+	 */
+	static long grundyBytes(int heaps, int bits) {
+		return padded((long) heaps * bits);
+	}
+
+	/**
+	 * Returns the number of bytes of data of a table
+	 */
+	static long regionSize(int heaps, int bits) {
+		return grundyBytes(heaps, bits) + padded(heaps);
+	}
+
+	/**
+	 * Returns the bytes holding the given number of bits, rounded up to a multiple of 8 and
+	 * with 8 more so that any value can be read with one getLong
+	 */
+	private static long padded(long bits) {
+		return ((bits + 63) >>> 6 << 3) + 8;
+	}
+
+	/**
+	 * Returns the values for a subtraction set
+	 * @param moves the subtraction set
+	 * @return the values, or null if the tablebase has no table for the set
+	 */
+	public HeapValues get(SubtractionSet moves) {
+		return tables.get(moves);
+	}
+
+	/**
+	 * Returns the number of heap sizes stored for a subtraction set
+	 * @param moves the subtraction set
+	 * @return the number of heaps sizes, from 0, or 0 if there is no table for the set
+	 */
+	public int getHeapCount(SubtractionSet moves) {
+		Table t = tables.get(moves);
+		return (t == null) ? 0 : t.heaps;
+	}
+
+	/**
+	 * Returns the subtraction sets the tablebase has tables for
+	 * @return the subtraction sets
+	 */
+	public Set<SubtractionSet> getSubtractionSets() {
+		return Collections.unmodifiableSet(tables.keySet());
+	}
+
+	/**
+	 * Returns the file of the tablebase
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Closes the file.  Tables already mapped can still be used, the rest can no longer be.
+	 */
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	/**
+	 * The values of one subtraction set
+	 */
+	private static final class Table implements HeapValues {
+		private final FileChannel channel;
+		private final SubtractionSet moves;
+		private final int heaps, bits;
+		private final long offset;
+		private final long mask;
+		private final int misere;
+		private volatile MappedByteBuffer data;
+		private volatile GrundyTable beyond;
+
+		Table(FileChannel channel, SubtractionSet moves, int heaps, int bits, long offset) throws IOException {
+			if (regionSize(heaps, bits) > Integer.MAX_VALUE)
+				throw new IOException("Table for " + moves + " is too large to map");
+			this.channel = channel;
+			this.moves = moves;
+			this.heaps = heaps;
+			this.bits = bits;
+			this.offset = offset;
+			mask = (1L << bits) - 1;
+			misere = (int) grundyBytes(heaps, bits);
+		}
+
+		public SubtractionSet getMoves() {
+			return moves;
+		}
+
+		public int grundy(int heap) {
+			if (heap < 0)
+				throw new IllegalArgumentException("negative heap: " + heap);
+			if (heap >= heaps)
+				return beyond().grundy(heap);
+			long bit = (long) heap * bits;
+			long word = data().getLong((int) (bit >>> 3));
+			return (int) (word >>> (64 - (bit & 7) - bits) & mask);
+		}
+
+		public boolean isMisereWin(int heap) {
+			if (heap < 0)
+				throw new IllegalArgumentException("negative heap: " + heap);
+			if (heap >= heaps)
+				return beyond().isMisereWin(heap);
+			return (data().get(misere + (heap >>> 3)) & (0x80 >>> (heap & 7))) != 0;
+		}
+
+		private MappedByteBuffer data() {
+			MappedByteBuffer d = data;
+			if (d == null) {
+				synchronized (this) {
+					d = data;
+					if (d == null) {
+						try {
+							d = channel.map(FileChannel.MapMode.READ_ONLY, offset, regionSize(heaps, bits));
+						} catch (IOException e) {
+							throw new IllegalStateException("Could not map the table for " + moves, e);
+						}
+						data = d;
+					}
+				}
+			}
+			return d;
+		}
+
+		private GrundyTable beyond() {
+			GrundyTable t = beyond;
+			if (t == null) {
+				synchronized (this) {
+					t = beyond;
+					if (t == null) {
+						t = new GrundyTable(moves);
+						beyond = t;
+					}
+				}
+			}
+			return t;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package waldonsm.nimgame.tablebase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import waldonsm.nimgame.game.GrundyTable;
+import waldonsm.nimgame.game.SubtractionSet;
+
+/**
+ * Generates tablebase files (see Tablebase) offline.  The tables are computed in parallel,
+ * one subtraction set per task, and written in order to a temporary file that replaces the
+ * output when it is complete, so a reader never sees half a tablebase.
+ * <P>
+ * Usage: TablebaseGenerator [options] output<br>
+ * --heaps n the number of heap sizes to store for each set, from 0 (default 1048576)<br>
+ * --set a,b,c a subtraction set (may be repeated)<br>
+ * --ranges m every range 1 to k for k up to m<br>
+ * --subsets k every subtraction set drawn from 1 to k<br>
+ * --threads n (default: the number of processors)
+ * @author Shawn Waldon
+ *
+ */
+public class TablebaseGenerator {
+
+	/**
+	 * The number of heap sizes stored by default
+	 */
+	public static final int DEFAULT_HEAPS = 1 << 20;
+
+	private TablebaseGenerator() {
+	}
+
+	/**
+	 * A table computed and packed, ready to be written
+	 */
+	private static final class Packed {
+		final SubtractionSet moves;
+		final int bits;
+		final long[] grundy, misere;
+
+		Packed(SubtractionSet moves, int bits, long[] grundy, long[] misere) {
+			this.moves = moves;
+			this.bits = bits;
+			this.grundy = grundy;
+			this.misere = misere;
+		}
+	}
+
+	/**
+	 * Writes a tablebase
+	 * @param output the file to write
+	 * @param sets the subtraction sets to store
+	 * @param heaps the number of heap sizes to store for each set, from 0
+	 * @param threads the number of threads to compute the tables with
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void generate(File output, List<SubtractionSet> sets, int heaps, int threads)
+			throws IOException {
+		if (heaps <= 0 || threads <= 0)
+			throw new IllegalArgumentException();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			File temp = new File(output.getPath() + ".tmp");
+			write(temp, sets, heaps, pool, 2 * threads);
+			if (!temp.renameTo(output)) {
+				output.delete();
+				if (!temp.renameTo(output))
+					throw new IOException("Could not replace " + output);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Computes and packs the values of one subtraction set
+	 */
+	private static Packed pack(SubtractionSet moves, int heaps) {
+		GrundyTable table = new GrundyTable(moves);
+		int max = 0;
+		for (int n = 0; n < heaps; n++) {
+			max = Math.max(max, table.grundy(n));
+		}
+		int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+		long[] grundy = new long[(int) (((long) heaps * bits + 63) >>> 6)];
+		long[] misere = new long[(heaps + 63) >>> 6];
+		for (int n = 0; n < heaps; n++) {
+			long value = table.grundy(n);
+			long bit = (long) n * bits;
+			int word = (int) (bit >>> 6);
+			int shift = (int) (bit & 63);
+			// most significant bit first, spilling into the next word
+			if (shift + bits <= 64) {
+				grundy[word] |= value << (64 - shift - bits);
+			} else {
+				grundy[word] |= value >>> (shift + bits - 64);
+				grundy[word + 1] |= value << (128 - shift - bits);
+			}
+			if (table.isMisereWin(n)) {
+				misere[n >>> 6] |= 1L << (63 - (n & 63));
+			}
+		}
+		return new Packed(moves, bits, grundy, misere);
+	}
+
+	/**
+	 * Writes the tables in order as they are computed, keeping at most window of them in
+	 * memory at once, then the index and header
+	 */
+	private static void write(File file, List<SubtractionSet> sets, final int heaps,
+			ExecutorService pool, int window) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			channel.truncate(0);
+			int indexSize = 0;
+			for (SubtractionSet moves: sets) {
+				indexSize += 3 * 4 + 4 + 8 + (moves.isRange() ? 0 : 4 * moves.size());
+			}
+			ByteBuffer index = ByteBuffer.allocate(indexSize);
+			ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+			long offset = Tablebase.HEADER_SIZE + indexSize;
+			ArrayDeque<Future<Packed>> pending = new ArrayDeque<Future<Packed>>();
+			Iterator<SubtractionSet> next = sets.iterator();
+			while (next.hasNext() || !pending.isEmpty()) {
+				while (next.hasNext() && pending.size() < window) {
+					final SubtractionSet moves = next.next();
+					pending.add(pool.submit(new Callable<Packed>() {
+						public Packed call() {
+							return pack(moves, heaps);
+						}
+					}));
+				}
+				Packed p = get(pending.remove());
+				index.putInt(p.moves.getMax());
+				if (p.moves.isRange()) {
+					index.putInt(0);
+				} else {
+					index.putInt(p.moves.size());
+					for (int k = 0; k < p.moves.size(); k++) {
+						index.putInt(p.moves.get(k));
+					}
+				}
+				index.putInt(heaps);
+				index.put((byte) p.bits).put((byte) 0).put((byte) 0).put((byte) 0);
+				index.putLong(offset);
+				long grundyBytes = Tablebase.grundyBytes(heaps, p.bits);
+				channel.position(offset);
+				writeLongs(channel, chunk, p.grundy, grundyBytes);
+				writeLongs(channel, chunk, p.misere, Tablebase.regionSize(heaps, p.bits) - grundyBytes);
+				offset += Tablebase.regionSize(heaps, p.bits);
+			}
+			// the index and header go in last, once the offsets and bit widths are known
+			index.flip();
+			writeFully(channel, index, Tablebase.HEADER_SIZE);
+			ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_SIZE);
+			header.putInt(Tablebase.MAGIC).putShort(Tablebase.VERSION).putShort(Tablebase.HEADER_SIZE);
+			header.putInt(sets.size()).putInt(indexSize).putLong(offset).putLong(0);
+			header.flip();
+			writeFully(channel, header, 0);
+			channel.force(true);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes the longs at the channel's position, zero padded to the given number of bytes
+	 */
+	private static void writeLongs(FileChannel channel, ByteBuffer chunk, long[] values, long bytes)
+			throws IOException {
+		chunk.clear();
+		for (long i = 0; i < bytes / 8; i++) {
+			if (!chunk.hasRemaining()) {
+				chunk.flip();
+				while (chunk.hasRemaining()) {
+					channel.write(chunk);
+				}
+				chunk.clear();
+			}
+			chunk.putLong((i < values.length) ? values[(int) i] : 0);
+		}
+		chunk.flip();
+		while (chunk.hasRemaining()) {
+			channel.write(chunk);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer b, long position) throws IOException {
+		while (b.hasRemaining()) {
+			channel.write(b, position + b.position());
+		}
+	}
+
+	private static Packed get(Future<Packed> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not compute a table", e.getCause());
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: TablebaseGenerator [--heaps n] [--set a,b,c]... [--ranges m] [--subsets k] [--threads n] output");
+		System.exit(1);
+	}
+
+	/**
+	 * Generates a tablebase from the command line
+	 * @param args the command line, see the class documentation
+	 */
+	public static void main(String[] args) throws IOException {
+		int heaps = DEFAULT_HEAPS;
+		int threads = Runtime.getRuntime().availableProcessors();
+		Set<SubtractionSet> sets = new LinkedHashSet<SubtractionSet>();
+		File output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String a = args[i];
+				if (a.equals("--heaps")) {
+					heaps = Integer.parseInt(args[++i]);
+				} else if (a.equals("--set")) {
+					String[] parts = args[++i].split(",");
+					int[] moves = new int[parts.length];
+					for (int k = 0; k < parts.length; k++) {
+						moves[k] = Integer.parseInt(parts[k].trim());
+					}
+					sets.add(SubtractionSet.of(moves));
+				} else if (a.equals("--ranges")) {
+					int m = Integer.parseInt(args[++i]);
+					for (int k = 1; k <= m; k++) {
+						sets.add(SubtractionSet.upTo(k));
+					}
+				} else if (a.equals("--subsets")) {
+					int k = Integer.parseInt(args[++i]);
+					if (k < 1 || k > 20)
+						throw new IllegalArgumentException("--subsets must be from 1 to 20");
+					for (int bitsSet = 1; bitsSet < (1 << k); bitsSet++) {
+						int[] moves = new int[Integer.bitCount(bitsSet)];
+						int n = 0;
+						for (int b = 0; b < k; b++) {
+							if ((bitsSet & (1 << b)) != 0)
+								moves[n++] = b + 1;
+						}
+						sets.add(SubtractionSet.of(moves));
+					}
+				} else if (a.equals("--threads")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (a.startsWith("--") || output != null) {
+					usage();
+				} else {
+					output = new File(a);
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println(e.getMessage());
+			usage();
+		}
+		if (output == null || sets.isEmpty())
+			usage();
+		long start = System.nanoTime();
+		generate(output, new ArrayList<SubtractionSet>(sets), heaps, threads);
+		System.out.println("Wrote " + sets.size() + " tables of " + heaps + " heaps to " + output + " ("
+				+ output.length() + " bytes) in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
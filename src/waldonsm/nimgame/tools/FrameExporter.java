@@ -0,0 +1,464 @@
+package waldonsm.nimgame.tools;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import waldonsm.nimgame.gui.animation.Animatable;
+import waldonsm.nimgame.gui.animation.Explosion;
+
+/**
+ * Headless exporter for the frames of the NimGame animations (replaces the old FrameMaker).
+ * <P>
+ * Frames are rendered (and for zip output, PNG encoded) in parallel by a pool of worker
+ * threads, while the calling thread writes the finished frames in order.  Only a window of
+ * frames is in flight at a time and their image buffers are reused.
+ * <P>
+ * Usage: FrameExporter [options] output<br>
+ * --format zip|sheet|gif (default: from the output extension, .zip, .png or .gif)<br>
+ * --effect explosion<br>
+ * --frames n (default: until the effect is done)<br>
+ * --cell n the size of each cell of the effect in pixels (default 4)<br>
+ * --width n, --height n the size of each frame (default 100x100)<br>
+ * --color rrggbb (default: a random explosion color)<br>
+ * --columns n the number of frames per row of a sprite sheet<br>
+ * --delay ms the time between frames of an animated GIF (default 30)<br>
+ * --threads n (default: the number of processors)
+ * @author Shawn Waldon
+ *
+ */
+public class FrameExporter {
+
+	/**
+	 * The effects that can be exported
+	 */
+	public enum Effect {
+		EXPLOSION {
+			@Override
+			public Animatable create(int cellSize, Color color) {
+				return new Explosion(0, 0, cellSize, color, NO_OP);
+			}
+		};
+
+		/**
+		 * Creates the effect at its first frame
+		 * @param cellSize the size of each cell in pixels
+		 * @param color the color of the effect
+		 * @return the new effect
+		 */
+		public abstract Animatable create(int cellSize, Color color);
+	}
+
+	/**
+	 * The supported output formats
+	 */
+	public enum Format {
+		ZIP, SHEET, GIF
+	}
+
+	private static final Runnable NO_OP = new Runnable() {
+		public void run() {
+		}
+	};
+
+	private Effect effect = Effect.EXPLOSION;
+	private Format format;
+	private int maxFrames = Integer.MAX_VALUE;
+	private int cellSize = 4;
+	private int width = 100, height = 100;
+	private Color color = new Color((float)1.0,(float)(Math.random()/2+.25),(float)Math.random()/2);
+	private int columns;
+	private int delayMillis = 30;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Exports the frames as described by the command line arguments
+	 * @param args the options followed by the output file
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		FrameExporter exporter = new FrameExporter();
+		File output = null;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (!arg.startsWith("--")) {
+					output = new File(arg);
+				} else if (i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value for " + arg);
+				} else {
+					exporter.setOption(arg.substring(2), args[++i]);
+				}
+			}
+			if (output == null) {
+				throw new IllegalArgumentException("No output file given");
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: FrameExporter [--format zip|sheet|gif] [--effect explosion] [--frames n]"
+					+ " [--cell n] [--width n] [--height n] [--color rrggbb] [--columns n] [--delay ms]"
+					+ " [--threads n] output");
+			System.exit(2);
+		}
+		try {
+			long start = System.nanoTime();
+			int frames = exporter.export(output);
+			System.out.printf("Wrote %d frames to %s in %d ms%n", frames, output,
+					(System.nanoTime() - start) / 1000000);
+		} catch (IOException e) {
+			e.printStackTrace(System.err);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Sets one of the command line options
+	 * @param name the option name, without the leading dashes
+	 * @param value the option value
+	 */
+	public void setOption(String name, String value) {
+		if (name.equals("format")) {
+			format = Format.valueOf(value.toUpperCase());
+		} else if (name.equals("effect")) {
+			effect = Effect.valueOf(value.toUpperCase());
+		} else if (name.equals("frames")) {
+			maxFrames = positive(name, value);
+		} else if (name.equals("cell")) {
+			cellSize = positive(name, value);
+		} else if (name.equals("width")) {
+			width = positive(name, value);
+		} else if (name.equals("height")) {
+			height = positive(name, value);
+		} else if (name.equals("color")) {
+			color = new Color(Integer.parseInt(value, 16));
+		} else if (name.equals("columns")) {
+			columns = positive(name, value);
+		} else if (name.equals("delay")) {
+			delayMillis = positive(name, value);
+		} else if (name.equals("threads")) {
+			threads = positive(name, value);
+		} else {
+			throw new IllegalArgumentException("Unknown option --" + name);
+		}
+	}
+
+	private static int positive(String name, String value) {
+		int n = Integer.parseInt(value);
+		if (n <= 0)
+			throw new IllegalArgumentException("--" + name + " must be positive");
+		return n;
+	}
+
+	/**
+	 * Renders and writes the frames to the given file
+	 * @param output the file to write
+	 * @return the number of frames written
+	 * @throws IOException if the output could not be written
+	 */
+	public int export(File output) throws IOException {
+		Format fmt = (format != null) ? format : formatOf(output);
+		int frames = countFrames();
+		FrameSink sink;
+		switch (fmt) {
+		case ZIP:
+			sink = new ZipSink(output);
+			break;
+		case SHEET:
+			sink = new SheetSink(output, frames);
+			break;
+		default:
+			sink = new GifSink(output);
+			break;
+		}
+		// twice as many frames in flight as workers, so the writer never starves them
+		int window = Math.max(2, threads * 2);
+		BlockingQueue<BufferedImage> buffers = new ArrayBlockingQueue<BufferedImage>(window);
+		for (int i = 0; i < window; i++) {
+			buffers.add(new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR));
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<Frame>> inFlight = new ArrayDeque<Future<Frame>>();
+		try {
+			int submitted = 0;
+			for (int written = 0; written < frames; written++) {
+				while (submitted < frames && inFlight.size() < window) {
+					inFlight.add(pool.submit(new RenderTask(submitted++, buffers, sink.wantsPng())));
+				}
+				Frame frame = inFlight.remove().get();
+				sink.write(written, frame);
+				if (frame.image != null) {
+					buffers.add(frame.image);
+				}
+			}
+			sink.finish();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while exporting", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to render a frame", e.getCause());
+		} finally {
+			for (Iterator<Future<Frame>> it = inFlight.iterator(); it.hasNext();) {
+				it.next().cancel(true);
+			}
+			pool.shutdownNow();
+			sink.close();
+		}
+		return frames;
+	}
+
+	/**
+	 * Returns the number of frames to export, the length of the effect capped by --frames
+	 */
+	private int countFrames() {
+		Animatable a = effect.create(cellSize, color);
+		int n = 1;
+		while (n < maxFrames) {
+			a.next();
+			if (a.isDone())
+				break;
+			n++;
+		}
+		return n;
+	}
+
+	private static Format formatOf(File output) {
+		String name = output.getName().toLowerCase();
+		if (name.endsWith(".gif"))
+			return Format.GIF;
+		if (name.endsWith(".png"))
+			return Format.SHEET;
+		return Format.ZIP;
+	}
+
+	/**
+	 * A rendered frame, with its image (returned to the pool once written) and/or its
+	 * PNG encoding
+	 */
+	private static class Frame {
+		final BufferedImage image;
+		final byte[] png;
+
+		Frame(BufferedImage image, byte[] png) {
+			this.image = image;
+			this.png = png;
+		}
+	}
+
+	/**
+	 * Renders one frame on a worker thread
+	 */
+	private class RenderTask implements Callable<Frame> {
+		private final int index;
+		private final BlockingQueue<BufferedImage> buffers;
+		private final boolean encode;
+
+		RenderTask(int index, BlockingQueue<BufferedImage> buffers, boolean encode) {
+			this.index = index;
+			this.buffers = buffers;
+			this.encode = encode;
+		}
+
+		public Frame call() throws Exception {
+			Animatable a = effect.create(cellSize, color);
+			for (int i = 0; i < index; i++) {
+				a.next();
+			}
+			BufferedImage image = buffers.take();
+			Graphics2D g = image.createGraphics();
+			try {
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(0, 0, width, height);
+				g.setComposite(AlphaComposite.SrcOver);
+				a.draw(g);
+			} finally {
+				g.dispose();
+			}
+			if (!encode) {
+				return new Frame(image, null);
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try {
+				if (!ImageIO.write(image, "png", bytes)) {
+					throw new IOException("No PNG writer available");
+				}
+			} finally {
+				buffers.add(image);
+			}
+			return new Frame(null, bytes.toByteArray());
+		}
+	}
+
+	/**
+	 * Receives the frames in order on the writing thread
+	 */
+	private interface FrameSink {
+		boolean wantsPng();
+
+		void write(int index, Frame frame) throws IOException;
+
+		void finish() throws IOException;
+
+		void close() throws IOException;
+	}
+
+	/**
+	 * Writes each frame as a PNG entry of a zip file, as FrameMaker did
+	 */
+	private static class ZipSink implements FrameSink {
+		private final ZipOutputStream zos;
+
+		ZipSink(File file) throws IOException {
+			zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		}
+
+		public boolean wantsPng() {
+			return true;
+		}
+
+		public void write(int index, Frame frame) throws IOException {
+			zos.putNextEntry(new ZipEntry("frame" + index + ".png"));
+			zos.write(frame.png);
+			zos.closeEntry();
+		}
+
+		public void finish() throws IOException {
+			zos.finish();
+		}
+
+		public void close() throws IOException {
+			zos.close();
+		}
+	}
+
+	/**
+	 * Lays the frames out left to right, top to bottom in a single PNG
+	 */
+	private class SheetSink implements FrameSink {
+		private final File file;
+		private final int cols;
+		private final BufferedImage sheet;
+		private final Graphics2D g;
+
+		SheetSink(File file, int frames) {
+			this.file = file;
+			cols = (columns > 0) ? Math.min(columns, frames) : (int) Math.ceil(Math.sqrt(frames));
+			int rows = (frames + cols - 1) / cols;
+			sheet = new BufferedImage(cols * width, rows * height, BufferedImage.TYPE_4BYTE_ABGR);
+			g = sheet.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+		}
+
+		public boolean wantsPng() {
+			return false;
+		}
+
+		public void write(int index, Frame frame) {
+			g.drawImage(frame.image, index % cols * width, index / cols * height, null);
+		}
+
+		public void finish() throws IOException {
+			if (!ImageIO.write(sheet, "png", file)) {
+				throw new IOException("No PNG writer available");
+			}
+		}
+
+		public void close() {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Writes the frames as a looping animated GIF
+	 */
+	private class GifSink implements FrameSink {
+		private final ImageWriter writer;
+		private final ImageOutputStream out;
+		private final OutputStream file;
+		private IIOMetadata metadata;
+
+		GifSink(File output) throws IOException {
+			Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+			if (!writers.hasNext()) {
+				throw new IOException("No GIF writer available");
+			}
+			writer = writers.next();
+			file = new BufferedOutputStream(new FileOutputStream(output));
+			out = ImageIO.createImageOutputStream(file);
+			writer.setOutput(out);
+			writer.prepareWriteSequence(null);
+		}
+
+		public boolean wantsPng() {
+			return false;
+		}
+
+		public void write(int index, Frame frame) throws IOException {
+			if (metadata == null) {
+				metadata = createMetadata(frame.image);
+			}
+			writer.writeToSequence(new IIOImage(frame.image, null, metadata), null);
+		}
+
+		private IIOMetadata createMetadata(BufferedImage image) throws IOException {
+			IIOMetadata meta = writer.getDefaultImageMetadata(
+					ImageTypeSpecifier.createFromRenderedImage(image), null);
+			String formatName = meta.getNativeMetadataFormatName();
+			IIOMetadataNode root = (IIOMetadataNode) meta.getAsTree(formatName);
+
+			IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+			control.setAttribute("disposalMethod", "restoreToBackgroundColor");
+			control.setAttribute("userInputFlag", "FALSE");
+			control.setAttribute("transparentColorFlag", "FALSE");
+			control.setAttribute("delayTime", Integer.toString(Math.max(1, delayMillis / 10)));
+			control.setAttribute("transparentColorIndex", "0");
+			root.appendChild(control);
+
+			IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+			IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+			loop.setAttribute("applicationID", "NETSCAPE");
+			loop.setAttribute("authenticationCode", "2.0");
+			loop.setUserObject(new byte[] {1, 0, 0});
+			extensions.appendChild(loop);
+			root.appendChild(extensions);
+
+			meta.setFromTree(formatName, root);
+			return meta;
+		}
+
+		public void finish() throws IOException {
+			writer.endWriteSequence();
+		}
+
+		public void close() throws IOException {
+			writer.dispose();
+			out.close();
+			file.close();
+		}
+	}
+}
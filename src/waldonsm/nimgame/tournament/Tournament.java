@@ -0,0 +1,191 @@
+package waldonsm.nimgame.tournament;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import waldonsm.nimgame.ai.NimGameAI;
+import waldonsm.nimgame.game.NimRules;
+
+/**
+ * Plays two NimGameAIs against each other headlessly, many games at a time, with the rules
+ * of the GUI game: a single pile, taking 1 to maxNumTakable things a turn.
+ * <P>
+ * The games are split between the workers of a ForkJoinPool.  Every leaf task creates its
+ * own AI instances and random number generator and counts into its own result, so the
+ * workers share nothing until their results are merged; AIs that are Closeable are closed
+ * when their task is done.  The players alternate moving first, and a player who makes an
+ * illegal move (or throws, or overflows the stack) forfeits the game.
+ * @author Shawn Waldon
+ *
+ */
+public class Tournament {
+
+	/**
+	 * Creates the AI instances used by each worker
+	 */
+	public interface AIFactory {
+		NimGameAI create();
+	}
+
+	/**
+	 * The number of games below which a task plays its games itself rather than splitting
+	 */
+	private static final long LEAF_GAMES = 4096;
+
+	private final AIFactory[] players;
+	private final int minPile, maxPile;
+	private final int maxNumTakable;
+	private final boolean lastTakenLoses;
+
+	/**
+	 * Creates a tournament between two AIs
+	 * @param first the factory for player 0
+	 * @param second the factory for player 1
+	 * @param minPile the smallest starting pile
+	 * @param maxPile the largest starting pile (each game picks one at random)
+	 * @param maxNumTakable the maximum number of things that can be taken in one turn
+	 * @param lastTakenLoses true if the player who takes the last thing loses
+	 */
+	public Tournament(AIFactory first, AIFactory second, int minPile, int maxPile,
+			int maxNumTakable, boolean lastTakenLoses) {
+		if (minPile <= 0)
+			throw new IllegalArgumentException("The smallest pile must be positive: " + minPile);
+		if (maxPile < minPile)
+			throw new IllegalArgumentException("The largest pile, " + maxPile + ", is smaller than the smallest, "
+					+ minPile);
+		if (maxNumTakable <= 0)
+			throw new IllegalArgumentException("The maximum number takable must be positive: " + maxNumTakable);
+		players = new AIFactory[] {first, second};
+		this.minPile = minPile;
+		this.maxPile = maxPile;
+		this.maxNumTakable = maxNumTakable;
+		this.lastTakenLoses = lastTakenLoses;
+	}
+
+	/**
+	 * Returns a factory creating instances of the given AI class with its no-argument
+	 * constructor
+	 * @param type the AI class
+	 * @return the factory
+	 */
+	public static AIFactory factoryFor(final Class<? extends NimGameAI> type) {
+		return new AIFactory() {
+			public NimGameAI create() {
+				try {
+					return type.newInstance();
+				} catch (InstantiationException e) {
+					throw new IllegalArgumentException("Cannot create " + type.getName(), e);
+				} catch (IllegalAccessException e) {
+					throw new IllegalArgumentException("Cannot create " + type.getName(), e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Plays the given number of games on the given pool
+	 * @param games the number of games to play
+	 * @param seed the seed for the starting piles, the same seed gives the same piles
+	 * @param pool the pool to play the games on
+	 * @return the totals of all the games
+	 */
+	public TournamentResult play(long games, long seed, ForkJoinPool pool) {
+		if (games <= 0)
+			throw new IllegalArgumentException("The number of games must be positive: " + games);
+		long start = System.nanoTime();
+		TournamentResult result = pool.invoke(new PlayTask(0, games, seed));
+		result.setElapsedNanos(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Plays one game
+	 * @param bots the two players
+	 * @param numLeft the starting pile
+	 * @param firstMover the player who moves first
+	 * @param result where the game is recorded
+	 */
+	private void playGame(NimGameAI[] bots, int numLeft, int firstMover, TournamentResult result) {
+		int mover = firstMover;
+		while (true) {
+			int take;
+			try {
+				take = bots[mover].chooseNumToTake(numLeft, maxNumTakable, lastTakenLoses);
+			} catch (RuntimeException e) {
+				take = 0;
+			} catch (StackOverflowError e) {
+				// a recursive AI on a pile too big for it, which forfeits like any other failure
+				take = 0;
+			}
+			if (!NimRules.isLegalTake(take, numLeft, maxNumTakable)) {
+				result.record(1 - mover, firstMover, mover);
+				return;
+			}
+			numLeft -= take;
+			if (numLeft == 0) {
+				result.record(lastTakenLoses ? 1 - mover : mover, firstMover, -1);
+				return;
+			}
+			mover = 1 - mover;
+		}
+	}
+
+	/**
+	 * Closes the AIs of a finished task that hold resources, such as a SearchAI's table
+	 */
+	private static void close(NimGameAI[] bots) {
+		for (NimGameAI bot: bots) {
+			if (bot instanceof Closeable) {
+				try {
+					((Closeable) bot).close();
+				} catch (IOException e) {
+					// the games are played, nothing more can go wrong with them
+				}
+			}
+		}
+	}
+
+	/**
+	 * Plays games from (inclusive) to to (exclusive), splitting in half while there are
+	 * more than LEAF_GAMES of them
+	 */
+	private class PlayTask extends RecursiveTask<TournamentResult> {
+		private static final long serialVersionUID = 1L;
+
+		private final long from, to;
+		private final long seed;
+
+		PlayTask(long from, long to, long seed) {
+			this.from = from;
+			this.to = to;
+			this.seed = seed;
+		}
+
+		@Override
+		protected TournamentResult compute() {
+			if (to - from <= LEAF_GAMES) {
+				NimGameAI[] bots = {players[0].create(), players[1].create()};
+				try {
+					Random random = new Random(seed ^ (from * 0x9E3779B97F4A7C15L));
+					TournamentResult result = new TournamentResult();
+					long range = (long) maxPile - minPile + 1;
+					for (long game = from; game < to; game++) {
+						int pile = (int) (minPile + Math.floorMod(random.nextLong(), range));
+						playGame(bots, pile, (int) (game & 1), result);
+					}
+					return result;
+				} finally {
+					close(bots);
+				}
+			}
+			long mid = (from + to) >>> 1;
+			PlayTask left = new PlayTask(from, mid, seed);
+			left.fork();
+			TournamentResult right = new PlayTask(mid, to, seed).compute();
+			return left.join().merge(right);
+		}
+	}
+}
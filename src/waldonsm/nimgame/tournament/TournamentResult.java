@@ -0,0 +1,110 @@
+package waldonsm.nimgame.tournament;
+
+/**
+ * The totals of a Tournament between two AIs, player 0 and player 1.  Each worker keeps
+ * its own result and they are merged when the workers join.
+ * @author Shawn Waldon
+ *
+ */
+public class TournamentResult {
+
+	private long games;
+	private final long[] wins = new long[2];
+	private final long[] illegalMoves = new long[2];
+	private long firstMoverWins;
+	private long elapsedNanos;
+
+	/**
+	 * Records one finished game
+	 * @param winner the player who won, 0 or 1
+	 * @param firstMover the player who moved first
+	 * @param illegalBy the player who forfeited by making an illegal move, or -1
+	 */
+	void record(int winner, int firstMover, int illegalBy) {
+		games++;
+		wins[winner]++;
+		if (winner == firstMover)
+			firstMoverWins++;
+		if (illegalBy >= 0)
+			illegalMoves[illegalBy]++;
+	}
+
+	/**
+	 * Adds the totals of another result to this one
+	 * @param other the other result
+	 * @return this result
+	 */
+	TournamentResult merge(TournamentResult other) {
+		games += other.games;
+		for (int i = 0; i < 2; i++) {
+			wins[i] += other.wins[i];
+			illegalMoves[i] += other.illegalMoves[i];
+		}
+		firstMoverWins += other.firstMoverWins;
+		return this;
+	}
+
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Returns the number of games played
+	 * @return the number of games played
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 * Returns the number of games won by the given player
+	 * @param player 0 or 1
+	 * @return the number of games won
+	 */
+	public long getWins(int player) {
+		return wins[player];
+	}
+
+	/**
+	 * Returns the fraction of games won by the given player
+	 * @param player 0 or 1
+	 * @return the win rate, from 0 to 1
+	 */
+	public double getWinRate(int player) {
+		return (games == 0) ? 0 : (double) wins[player] / games;
+	}
+
+	/**
+	 * Returns the number of illegal moves (including exceptions and stack overflows) by the
+	 * given player, each of which forfeited a game
+	 * @param player 0 or 1
+	 * @return the number of illegal moves
+	 */
+	public long getIllegalMoves(int player) {
+		return illegalMoves[player];
+	}
+
+	/**
+	 * Returns the fraction of games won by the player who moved first
+	 * @return the first mover's win rate, from 0 to 1
+	 */
+	public double getFirstMoverWinRate() {
+		return (games == 0) ? 0 : (double) firstMoverWins / games;
+	}
+
+	/**
+	 * Returns the wall clock time the tournament took
+	 * @return the elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Returns the number of games played per second of wall clock time
+	 * @return the games per second
+	 */
+	public double getGamesPerSecond() {
+		return (elapsedNanos == 0) ? 0 : games * 1e9 / elapsedNanos;
+	}
+}
@@ -0,0 +1,97 @@
+package waldonsm.nimgame.tournament;
+
+import java.util.concurrent.ForkJoinPool;
+
+import waldonsm.nimgame.ai.NimGameAI;
+
+/**
+ * Command line front end for Tournament.
+ * <P>
+ * Usage: TournamentRunner [options] firstAI secondAI<br>
+ * where the AIs are class names (the waldonsm.nimgame.ai package may be left off), and the
+ * options are<br>
+ * --games n (default 1000000)<br>
+ * --min n, --max n the range of starting piles (default 10 to 100)<br>
+ * --take n the maximum number of things taken in one turn (default 5)<br>
+ * --last-taken-wins (by default the last thing taken loses, as in the demo)<br>
+ * --threads n (default: the number of processors)<br>
+ * --seed n
+ * @author Shawn Waldon
+ *
+ */
+public class TournamentRunner {
+
+	public static void main(String[] args) {
+		long games = 1000000;
+		int minPile = 10, maxPile = 100, maxNumTakable = 5;
+		boolean lastTakenLoses = true;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = System.nanoTime();
+		String[] ais = new String[2];
+		int numAIs = 0;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--last-taken-wins")) {
+					lastTakenLoses = false;
+				} else if (arg.startsWith("--")) {
+					if (i + 1 >= args.length)
+						throw new IllegalArgumentException("Missing value for " + arg);
+					String value = args[++i];
+					if (arg.equals("--games"))
+						games = Long.parseLong(value);
+					else if (arg.equals("--min"))
+						minPile = Integer.parseInt(value);
+					else if (arg.equals("--max"))
+						maxPile = Integer.parseInt(value);
+					else if (arg.equals("--take"))
+						maxNumTakable = Integer.parseInt(value);
+					else if (arg.equals("--threads"))
+						threads = Integer.parseInt(value);
+					else if (arg.equals("--seed"))
+						seed = Long.parseLong(value);
+					else
+						throw new IllegalArgumentException("Unknown option " + arg);
+				} else if (numAIs < 2) {
+					ais[numAIs++] = arg;
+				} else {
+					throw new IllegalArgumentException("Too many AIs: " + arg);
+				}
+			}
+			if (numAIs < 2)
+				throw new IllegalArgumentException("Two AIs are needed");
+			if (threads <= 0)
+				throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+
+			Tournament tournament = new Tournament(factory(ais[0]), factory(ais[1]),
+					minPile, maxPile, maxNumTakable, lastTakenLoses);
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			TournamentResult result = tournament.play(games, seed, pool);
+			pool.shutdown();
+
+			System.out.printf("%d games in %.3f s on %d threads: %.0f games/sec%n", result.getGames(),
+					result.getElapsedNanos() / 1e9, threads, result.getGamesPerSecond());
+			for (int p = 0; p < 2; p++) {
+				System.out.printf("%-30s wins %6.2f%%  illegal moves %d%n", ais[p],
+						100 * result.getWinRate(p), result.getIllegalMoves(p));
+			}
+			System.out.printf("first mover wins %6.2f%%%n", 100 * result.getFirstMoverWinRate());
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: TournamentRunner [--games n] [--min n] [--max n] [--take n]"
+					+ " [--last-taken-wins] [--threads n] [--seed n] firstAI secondAI");
+			System.exit(2);
+		}
+	}
+
+	private static Tournament.AIFactory factory(String name) {
+		String className = (name.indexOf('.') < 0) ? "waldonsm.nimgame.ai." + name : name;
+		try {
+			return Tournament.factoryFor(Class.forName(className).asSubclass(NimGameAI.class));
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("No AI class " + className);
+		} catch (ClassCastException e) {
+			throw new IllegalArgumentException(className + " is not a NimGameAI");
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package waldonsm.nimgame.gui.animation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Steps GameOfLife alongside a plain two dimensional array version of the rules, as the
+ * board was before it was packed into words and tiles, and checks that every generation is
+ * the same
+ * @author Shawn Waldon
+ *
+ */
+public class GameOfLifeTest {
+
+	private static final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@AfterClass
+	public static void shutDownPool() {
+		pool.shutdown();
+	}
+
+	/**
+	 * The rules one cell at a time, on a board with a dead border
+	 */
+	private static final class NaiveLife {
+		private int[][] field;
+
+		NaiveLife(int h, int w) {
+			field = new int[h + 2][w + 2];
+		}
+
+		void addCell(int h, int w) {
+			field[h][w] = 1;
+		}
+
+		boolean isCell(int h, int w) {
+			return field[h][w] == 1;
+		}
+
+		void next() {
+			int[][] newField = new int[field.length][field[0].length];
+			for (int i = 1; i < field.length - 1; i++) {
+				for (int j = 1; j < field[i].length - 1; j++) {
+					int count = field[i - 1][j - 1] + field[i - 1][j] + field[i - 1][j + 1] + field[i][j - 1]
+							+ field[i][j + 1] + field[i + 1][j - 1] + field[i + 1][j] + field[i + 1][j + 1];
+					if (field[i][j] == 1 ? (count == 2 || count == 3) : count == 3) {
+						newField[i][j] = 1;
+					}
+				}
+			}
+			field = newField;
+		}
+	}
+
+	private static void assertSameBoard(String what, NaiveLife expected, GameOfLife actual, int h, int w) {
+		for (int i = 1; i <= h; i++) {
+			for (int j = 1; j <= w; j++) {
+				if (expected.isCell(i, j) != actual.isCell(i, j))
+					assertEquals(what + " cell (" + i + ", " + j + ")", expected.isCell(i, j), actual.isCell(i, j));
+			}
+		}
+	}
+
+	private static void addCell(NaiveLife expected, GameOfLife actual, int h, int w) {
+		expected.addCell(h, w);
+		actual.addCell(h, w);
+	}
+
+	private static void addCross(NaiveLife expected, GameOfLife actual, int x, int y) {
+		addCell(expected, actual, y, x);
+		addCell(expected, actual, y, x + 1);
+		addCell(expected, actual, y, x - 1);
+		addCell(expected, actual, y + 1, x);
+		addCell(expected, actual, y - 1, x);
+	}
+
+	@Test
+	public void explosion() {
+		int side = ExplosionFrames.CELLS - 2;
+		NaiveLife expected = new NaiveLife(side, side);
+		GameOfLife actual = new GameOfLife(side, side);
+		addCross(expected, actual, 13, 10);
+		addCross(expected, actual, 10, 13);
+		addCross(expected, actual, 13, 16);
+		addCross(expected, actual, 16, 13);
+		for (int turn = 0; turn < ExplosionFrames.TURNS; turn++) {
+			if (turn > 0) {
+				expected.next();
+				actual.next();
+				if (turn == 25) {
+					addCross(expected, actual, 5, 13);
+					addCross(expected, actual, 13, 5);
+					addCross(expected, actual, 21, 13);
+					addCross(expected, actual, 13, 21);
+				} else if (turn == 32) {
+					addCell(expected, actual, 5, 13);
+					addCell(expected, actual, 13, 5);
+					addCell(expected, actual, 21, 13);
+					addCell(expected, actual, 13, 21);
+				}
+			}
+			assertSameBoard("turn " + turn, expected, actual, side, side);
+			// and the frames every Explosion is drawn from
+			long[] mask = ExplosionFrames.getMask(turn);
+			for (int i = 1; i <= side; i++) {
+				for (int j = 1; j <= side; j++) {
+					assertEquals("mask of turn " + turn + " cell (" + i + ", " + j + ")",
+							expected.isCell(i, j), (mask[i] & (1L << j)) != 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Steps a random board of the given size, with more cells added now and then, and
+	 * compares every generation
+	 */
+	private static void randomBoard(long seed, int h, int w, double density, ForkJoinPool pool) {
+		Random random = new Random(seed);
+		NaiveLife expected = new NaiveLife(h, w);
+		GameOfLife actual = new GameOfLife(h, w, 1, 0, 0, null, pool);
+		for (int i = 1; i <= h; i++) {
+			for (int j = 1; j <= w; j++) {
+				if (random.nextDouble() < density) {
+					addCell(expected, actual, i, j);
+				}
+			}
+		}
+		for (int generation = 1; generation <= 60; generation++) {
+			expected.next();
+			actual.next();
+			if (generation % 20 == 0) {
+				for (int k = 0; k < 50; k++) {
+					addCell(expected, actual, 1 + random.nextInt(h), 1 + random.nextInt(w));
+				}
+			}
+			assertSameBoard(h + "x" + w + " seed " + seed + " generation " + generation, expected, actual, h, w);
+		}
+	}
+
+	@Test
+	public void smallBoards() {
+		int[][] sizes = {{1, 1}, {1, 3}, {3, 1}, {4, 61}, {5, 62}, {6, 63}, {7, 64}, {9, 126}, {12, 127}};
+		for (int[] size: sizes) {
+			randomBoard(size[0] * 1000 + size[1], size[0], size[1], 0.4, null);
+		}
+	}
+
+	@Test
+	public void boardsCrossingWordsAndTiles() {
+		// rows cross tiles every 64 and words every 64 columns, 4 words to a tile
+		int[][] sizes = {{62, 254}, {63, 255}, {64, 256}, {65, 300}, {130, 520}, {200, 1030}};
+		for (int[] size: sizes) {
+			randomBoard(size[0] * 10000 + size[1], size[0], size[1], 0.3, null);
+			randomBoard(size[0] * 10000 + size[1] + 1, size[0], size[1], 0.3, pool);
+		}
+	}
+
+	/**
+	 * A few patterns next to the edges of words and tiles on a mostly empty board, so that
+	 * most tiles are skipped and the patterns have to wake up the empty ones they grow into
+	 */
+	@Test
+	public void sparseBoardsCrossingTiles() {
+		int h = 300, w = 1100;
+		for (int seed = 0; seed < 24; seed++) {
+			Random random = new Random(seed);
+			NaiveLife expected = new NaiveLife(h, w);
+			GameOfLife actual = new GameOfLife(h, w, 1, 0, 0, null, (seed % 2 == 0) ? null : pool);
+			for (int blob = 0; blob < 6; blob++) {
+				// just inside a word (and sometimes tile) edge on one side or the other, in
+				// both directions, so that growing across the edge has to wake the next tile
+				int row = Math.min(h - 3, 64 * (1 + random.nextInt(h / 64)) + (random.nextBoolean() ? -3 : 2));
+				int col = Math.min(w - 3, 64 * (1 + random.nextInt(w / 64)) + (random.nextBoolean() ? -3 : 2));
+				for (int i = row - 2; i <= row + 2; i++) {
+					for (int j = col - 2; j <= col + 2; j++) {
+						if (random.nextBoolean()) {
+							addCell(expected, actual, i, j);
+						}
+					}
+				}
+			}
+			for (int generation = 1; generation <= 100; generation++) {
+				expected.next();
+				actual.next();
+				assertSameBoard("seed " + seed + " generation " + generation, expected, actual, h, w);
+			}
+		}
+	}
+}
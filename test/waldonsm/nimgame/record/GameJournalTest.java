@@ -0,0 +1,237 @@
+package waldonsm.nimgame.record;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes journals, damages some of them and checks what is read back
+ * @author Shawn Waldon
+ *
+ */
+public class GameJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Returns some games: an empty one, a short one and a long one with large indices
+	 */
+	private static List<GameRecord> games() {
+		List<GameRecord> games = new ArrayList<GameRecord>();
+		games.add(new GameRecord(0, 1, false, true, 0L, new int[0], new boolean[0], new long[0]));
+		games.add(new GameRecord(5, 2, true, false, 1234567890123L,
+				new int[] {0, 1, 2, 3, 4}, new boolean[] {true, true, false, true, false},
+				new long[] {10, 10, 700, 1500, 1500}));
+		int n = 100000;
+		int[] takes = new int[n];
+		boolean[] byAI = new boolean[n];
+		long[] times = new long[n];
+		for (int i = 0; i < n; i++) {
+			takes[i] = n - 1 - i;
+			byAI[i] = (i / 3) % 2 == 0;
+			times[i] = 40L * i + (i % 7);
+		}
+		games.add(new GameRecord(n, 3, false, false, 1700000000000L, takes, byAI, times));
+		return games;
+	}
+
+	private static void write(File file, List<GameRecord> games) throws IOException {
+		GameJournal journal = GameJournal.open(file);
+		try {
+			for (GameRecord game: games) {
+				journal.append(game);
+			}
+		} finally {
+			journal.close();
+		}
+	}
+
+	private static List<GameRecord> readAll(GameJournalReader reader) throws IOException {
+		List<GameRecord> games = new ArrayList<GameRecord>();
+		GameRecord game;
+		while ((game = reader.read()) != null) {
+			games.add(game);
+		}
+		return games;
+	}
+
+	/**
+	 * Checks that a game read back is the one written, up to the given number of takes
+	 */
+	private static void assertSameGame(GameRecord expected, GameRecord actual, int takes) {
+		assertEquals(expected.getNumThings(), actual.getNumThings());
+		assertEquals(expected.getMaxNumTakable(), actual.getMaxNumTakable());
+		assertEquals(expected.isLastTakenLoses(), actual.isLastTakenLoses());
+		assertEquals(expected.isPlayerGoesFirst(), actual.isPlayerGoesFirst());
+		assertEquals(expected.getStartMillis(), actual.getStartMillis());
+		assertEquals(takes, actual.getTakeCount());
+		for (int i = 0; i < takes; i++) {
+			assertEquals(expected.getTake(i), actual.getTake(i));
+			assertEquals(expected.getMover(i), actual.getMover(i));
+			assertEquals(expected.getTime(i), actual.getTime(i));
+		}
+	}
+
+	private static void assertSameGames(List<GameRecord> expected, List<GameRecord> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSameGame(expected.get(i), actual.get(i), expected.get(i).getTakeCount());
+		}
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		File file = new File(folder.getRoot(), "round-trip.nimj");
+		List<GameRecord> games = games();
+		write(file, games);
+		GameJournalReader reader = new GameJournalReader(file);
+		try {
+			assertSameGames(games, readAll(reader));
+			assertNull(reader.read());
+			assertFalse(reader.isTruncated());
+			assertEquals(file.length(), reader.getValidLength());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void reopenedJournalIsAppendedTo() throws IOException {
+		File file = new File(folder.getRoot(), "append.nimj");
+		List<GameRecord> games = games();
+		write(file, games.subList(0, 2));
+		write(file, games.subList(2, 3));
+		GameJournalReader reader = new GameJournalReader(file);
+		try {
+			assertSameGames(games, readAll(reader));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void truncatedTailIsCutOffOnOpen() throws IOException {
+		File file = new File(folder.getRoot(), "truncated.nimj");
+		List<GameRecord> games = games();
+		write(file, games);
+		// the last take is 2 or more bytes, so this leaves part of it
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 1);
+		} finally {
+			raf.close();
+		}
+		long cutLength = file.length();
+
+		GameJournalReader reader = new GameJournalReader(file);
+		long validLength;
+		try {
+			List<GameRecord> read = readAll(reader);
+			assertEquals(games.size(), read.size());
+			assertSameGames(games.subList(0, 2), read.subList(0, 2));
+			GameRecord last = games.get(2);
+			assertSameGame(last, read.get(2), last.getTakeCount() - 1);
+			assertTrue(reader.isTruncated());
+			validLength = reader.getValidLength();
+			assertTrue(validLength < cutLength);
+		} finally {
+			reader.close();
+		}
+
+		GameRecord more = games.get(1);
+		GameJournal journal = GameJournal.open(file);
+		try {
+			assertEquals(validLength, file.length());
+			journal.append(more);
+		} finally {
+			journal.close();
+		}
+		reader = new GameJournalReader(file);
+		try {
+			List<GameRecord> read = readAll(reader);
+			assertEquals(games.size() + 1, read.size());
+			assertSameGame(games.get(2), read.get(2), games.get(2).getTakeCount() - 1);
+			assertSameGame(more, read.get(3), more.getTakeCount());
+			assertFalse(reader.isTruncated());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void corruptEntryIsReportedAndLeftAlone() throws IOException {
+		File file = new File(folder.getRoot(), "corrupt.nimj");
+		List<GameRecord> games = games();
+		GameJournal journal = GameJournal.open(file);
+		long secondGame;
+		try {
+			journal.append(games.get(0));
+			journal.flush();
+			secondGame = file.length();
+			journal.append(games.get(1));
+			journal.append(games.get(2));
+		} finally {
+			journal.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(secondGame);
+			raf.write(0xFF);
+		} finally {
+			raf.close();
+		}
+		byte[] before = Files.readAllBytes(file.toPath());
+
+		GameJournalReader reader = new GameJournalReader(file);
+		try {
+			readAll(reader);
+			fail("read a corrupt entry");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("at byte " + secondGame));
+		} finally {
+			reader.close();
+		}
+
+		try {
+			GameJournal.open(file).close();
+			fail("opened a corrupt journal");
+		} catch (IOException e) {
+			// expected
+		}
+		assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test(expected = IOException.class)
+	public void takeWithoutGameIsCorrupt() throws IOException {
+		File file = new File(folder.getRoot(), "take-first.nimj");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.writeInt(GameJournal.MAGIC);
+			raf.writeByte(GameJournal.VERSION);
+			raf.write(new byte[] {GameJournal.TAG_PLAYER, 3, 0});
+		} finally {
+			raf.close();
+		}
+		GameJournalReader reader = new GameJournalReader(file);
+		try {
+			reader.read();
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package waldonsm.nimgame.tablebase;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import waldonsm.nimgame.game.GrundyTable;
+import waldonsm.nimgame.game.HeapValues;
+import waldonsm.nimgame.game.SubtractionSet;
+
+/**
+ * Generates tablebases and checks that what is read back agrees with GrundyTable
+ * @author Shawn Waldon
+ *
+ */
+public class TablebaseTest {
+
+	private static final int HEAPS = 3000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Returns the ranges 1 to 4 and every subset of 1 to 5
+	 */
+	private static List<SubtractionSet> sets() {
+		List<SubtractionSet> sets = new ArrayList<SubtractionSet>();
+		for (int k = 1; k <= 4; k++) {
+			sets.add(SubtractionSet.upTo(k));
+		}
+		for (int bitsSet = 1; bitsSet < (1 << 5); bitsSet++) {
+			int[] moves = new int[Integer.bitCount(bitsSet)];
+			int n = 0;
+			for (int b = 0; b < 5; b++) {
+				if ((bitsSet & (1 << b)) != 0)
+					moves[n++] = b + 1;
+			}
+			SubtractionSet set = SubtractionSet.of(moves);
+			if (!sets.contains(set)) {
+				sets.add(set);
+			}
+		}
+		sets.add(SubtractionSet.of(2, 5, 7));
+		return sets;
+	}
+
+	private static void assertAgrees(SubtractionSet moves, HeapValues values, int heaps) {
+		GrundyTable expected = new GrundyTable(moves);
+		for (int heap = 0; heap < heaps; heap++) {
+			assertEquals(moves + " grundy(" + heap + ")", expected.grundy(heap), values.grundy(heap));
+			assertEquals(moves + " isMisereWin(" + heap + ")", expected.isMisereWin(heap), values.isMisereWin(heap));
+		}
+	}
+
+	@Test
+	public void roundTripAgreesWithGrundyTable() throws IOException {
+		List<SubtractionSet> sets = sets();
+		File file = folder.newFile("round-trip.nimt");
+		TablebaseGenerator.generate(file, sets, HEAPS, 3);
+		Tablebase tablebase = Tablebase.open(file);
+		try {
+			assertEquals(new HashSet<SubtractionSet>(sets), tablebase.getSubtractionSets());
+			for (SubtractionSet moves: sets) {
+				assertEquals(HEAPS, tablebase.getHeapCount(moves));
+				// past the end of the file the values come from a GrundyTable
+				assertAgrees(moves, tablebase.get(moves), HEAPS + 100);
+			}
+			assertNull(tablebase.get(SubtractionSet.of(3, 8)));
+			assertEquals(0, tablebase.getHeapCount(SubtractionSet.of(3, 8)));
+		} finally {
+			tablebase.close();
+		}
+	}
+
+	@Test
+	public void threadCountDoesNotChangeTheFile() throws IOException {
+		List<SubtractionSet> sets = sets();
+		File one = folder.newFile("one.nimt");
+		File four = folder.newFile("four.nimt");
+		TablebaseGenerator.generate(one, sets, HEAPS, 1);
+		TablebaseGenerator.generate(four, sets, HEAPS, 4);
+		assertArrayEquals(Files.readAllBytes(one.toPath()), Files.readAllBytes(four.toPath()));
+	}
+
+	@Test
+	public void smallestTable() throws IOException {
+		SubtractionSet moves = SubtractionSet.of(1, 3, 4);
+		File file = folder.newFile("small.nimt");
+		TablebaseGenerator.generate(file, Collections.singletonList(moves), 1, 1);
+		Tablebase tablebase = Tablebase.open(file);
+		try {
+			assertEquals(1, tablebase.getHeapCount(moves));
+			assertAgrees(moves, tablebase.get(moves), 200);
+		} finally {
+			tablebase.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void notATablebase() throws IOException {
+		File file = folder.newFile("empty.nimt");
+		Tablebase.open(file).close();
+	}
+}